@@ -0,0 +1,110 @@
+package net.bhardy.braintree.scala
+
+import net.bhardy.braintree.scala.exceptions.NotFoundException
+
+import java.util.concurrent.{ScheduledExecutorService, TimeUnit}
+import scala.collection.mutable.LinkedHashMap
+import scala.concurrent.{Await, ExecutionContext, Future, Promise, blocking}
+import scala.concurrent.duration.Duration
+import scala.util.{Failure, Success}
+
+/**
+ * Gathers lookups by id made around the same time, from any number of threads, into one
+ * request. A batch is sent windowMillis after its first id arrives, or as soon as it holds
+ * maxBatch ids, and each caller gets back just its own record. The same id asked for twice
+ * in a batch is fetched once.
+ *
+ * Once closed, a loader sends whatever is pending at once and refuses further lookups.
+ *
+ * @param fetch - looks up a batch of ids, leaving out any not found
+ * @param timeout - how long find waits for its batch
+ */
+class BatchLoader[T] private[braintree](fetch: List[String] => Map[String, T], windowMillis: Long, maxBatch: Int,
+                                        scheduler: ScheduledExecutorService,
+                                        timeout: Duration = BatchLoader.DEFAULT_TIMEOUT)
+                                       (implicit executionContext: ExecutionContext) {
+
+  require(maxBatch > 0, "maxBatch must be positive")
+
+  private val lock = new Object
+  private var pending = new LinkedHashMap[String, Promise[Option[T]]]
+  private var generation = 0L
+  private var closed = false
+
+  /**
+   * The record with the given id, or None if there is none, once its batch has been fetched.
+   */
+  def load(id: String): Future[Option[T]] = {
+    if (id == null || id.trim == "") return Future.successful(None)
+    val (future, full) = lock.synchronized {
+      if (closed) return Future.failed(new IllegalStateException("loader is closed"))
+      val first = pending.isEmpty
+      val promise = pending.getOrElseUpdate(id, Promise[Option[T]]())
+      if (pending.size >= maxBatch) {
+        (promise.future, takeBatch())
+      } else {
+        if (first) schedule(generation)
+        (promise.future, LinkedHashMap.empty[String, Promise[Option[T]]])
+      }
+    }
+    dispatch(full)
+    future
+  }
+
+  /**
+   * Like the gateways' find: waits for the record, or raises a {@link NotFoundException}.
+   * Raises a TimeoutException if the batch takes longer than the timeout.
+   */
+  def find(id: String): T = {
+    Await.result(load(id), timeout).getOrElse(throw new NotFoundException)
+  }
+
+  /**
+   * Sends the pending batch now rather than at the end of its window, and refuses lookups from then on.
+   */
+  def close() {
+    dispatch(lock.synchronized {
+      closed = true
+      takeBatch()
+    })
+  }
+
+  private def schedule(batch: Long) {
+    scheduler.schedule(new Runnable {
+      def run() {
+        val due = lock.synchronized {
+          if (generation == batch) takeBatch() else LinkedHashMap.empty[String, Promise[Option[T]]]
+        }
+        dispatch(due)
+      }
+    }, windowMillis, TimeUnit.MILLISECONDS)
+  }
+
+  /**
+   * Called holding the lock. Moving to the next generation stops the timer of the batch
+   * taken from sending whatever comes after it.
+   */
+  private def takeBatch() = {
+    val batch = pending
+    pending = new LinkedHashMap[String, Promise[Option[T]]]
+    generation += 1
+    batch
+  }
+
+  private def dispatch(batch: LinkedHashMap[String, Promise[Option[T]]]) {
+    if (!batch.isEmpty) {
+      Future { blocking { fetch(batch.keys.toList) } } onComplete {
+        case Success(found) => batch.foreach { case (id, promise) => promise.success(found.get(id)) }
+        case Failure(e) => batch.values.foreach { _.failure(e) }
+      }
+    }
+  }
+}
+
+object BatchLoader {
+
+  /**
+   * How long find waits by default: a batch window and two gateway read timeouts.
+   */
+  final val DEFAULT_TIMEOUT = Duration(2, "minutes")
+}
@@ -0,0 +1,70 @@
+package net.bhardy.braintree.scala
+
+import net.bhardy.braintree.scala.gw.BraintreeGateway
+import net.bhardy.braintree.scala.util.{CacheStats, RefreshAheadCache}
+
+import scala.concurrent.ExecutionContext
+
+/**
+ * Cached plans, add-ons and discounts, which change rarely but are read on every signup.
+ * Each list is kept for ttlMillis and reloaded in the background during the last
+ * refreshAheadMillis of it. While reloads fail, the list is served for up to maxStaleMillis
+ * after it expires; see {@link RefreshAheadCache}.
+ *
+ * <pre>
+ * val catalog = new CatalogCache(gateway)
+ * catalog.preload()
+ * val plan = catalog.plans.find { _.id == planId }
+ * </pre>
+ *
+ * Merchant accounts can only be created through the gateway, not read, so are not cached.
+ */
+class CatalogCache(gateway: BraintreeGateway, ttlMillis: Long = CatalogCache.DEFAULT_TTL_MILLIS,
+                   refreshAheadMillis: Long = CatalogCache.DEFAULT_REFRESH_AHEAD_MILLIS,
+                   maxStaleMillis: Long = RefreshAheadCache.DEFAULT_MAX_STALE_MILLIS)
+                  (implicit executionContext: ExecutionContext) {
+
+  private def cache[V](load: () => V) = {
+    new RefreshAheadCache(load, ttlMillis, refreshAheadMillis, maxStaleMillis = maxStaleMillis)
+  }
+
+  private val planCache = cache { () => gateway.plan.all }
+
+  private val addOnCache = cache { () => gateway.addOn.all }
+
+  private val discountCache = cache { () => gateway.discount.all }
+
+  def plans: List[Plan] = planCache.get
+
+  def addOns: List[AddOn] = addOnCache.get
+
+  def discounts: List[Discount] = discountCache.get
+
+  /**
+   * Loads everything now, so that no signup waits on the first load.
+   */
+  def preload() {
+    planCache.preload()
+    addOnCache.preload()
+    discountCache.preload()
+  }
+
+  /**
+   * Drops everything, e.g. after changing plans in the control panel.
+   */
+  def invalidate() {
+    planCache.invalidate()
+    addOnCache.invalidate()
+    discountCache.invalidate()
+  }
+
+  def stats: Map[String, CacheStats] = {
+    Map("plans" -> planCache.stats, "addOns" -> addOnCache.stats, "discounts" -> discountCache.stats)
+  }
+}
+
+object CatalogCache {
+  final val DEFAULT_TTL_MILLIS: Long = 15 * 60 * 1000
+
+  final val DEFAULT_REFRESH_AHEAD_MILLIS: Long = 3 * 60 * 1000
+}
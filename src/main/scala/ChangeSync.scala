@@ -0,0 +1,154 @@
+package net.bhardy.braintree.scala
+
+import net.bhardy.braintree.scala.search.{SearchSnapshot, ShardRange}
+import net.bhardy.braintree.scala.util.{NodeWrapper, SearchIdsNodeWrapper}
+
+import java.io._
+import java.util.{Calendar, TimeZone}
+import scala.collection.mutable.{HashSet, LinkedHashSet}
+import scala.io.Source
+
+/**
+ * Polls a search for records that are new or have changed since the last poll, for keeping
+ * a copy of gateway data up to date without searching everything each time.
+ *
+ * Each poll searches the ids of every date field of the sync from the watermark, less an
+ * overlap to allow for records the gateway indexes late, up to now. The distinct ids are then
+ * fetched a page at a time, so a record found through several fields is fetched once.
+ * Records are told apart by id and version (their updated-at), so a record found again in
+ * the overlap is only handed over once until it changes. The watermark and the versions of
+ * records changed within the overlap are kept in a {@link SyncStateStore} between polls.
+ *
+ * <pre>
+ * val sync = gateway.transaction.changeSync(new TransactionSearchRequest, new FileSyncStateStore(file),
+ *   since = Some(lastExport))
+ * sync.poll { transaction => database.save(transaction) }
+ * </pre>
+ *
+ * The state is saved once the whole poll has been handled, so records from a poll that
+ * fails part way are handed over again by the next one.
+ *
+ * @param since - where the first poll, with no state stored yet, starts; None searches from
+ *              the beginning, which finds everything
+ */
+class ChangeSync[T] private[braintree](query: SearchSnapshot, fields: List[String],
+                                       searchIds: SearchSnapshot => NodeWrapper, pager: Pager[T],
+                                       id: T => String, updatedAt: T => Calendar,
+                                       store: SyncStateStore, overlapSeconds: Int, since: Option[Calendar] = None,
+                                       clock: () => Long = { () => System.currentTimeMillis }) {
+
+  require(overlapSeconds >= 0, "overlapSeconds must not be negative")
+
+  /**
+   * Hands each new or changed record to f, then moves the watermark up to the time the
+   * poll started.
+   *
+   * @return the number of records handed over
+   */
+  def poll(f: T => Unit): Int = {
+    val state = store.load
+    val now = calendar(clock())
+    val from = state.watermark.map { _ - overlapSeconds * 1000L } orElse since.map { _.getTimeInMillis }
+    val ids = new LinkedHashSet[String]
+    var pageSize = 0
+    for (field <- fields) {
+      val response = searchIds(query.withRange(ShardRange.dates(field, calendar(from.getOrElse(0L)), now)))
+      pageSize = response.findInteger("page-size").intValue
+      ids ++= SearchIdsNodeWrapper.ids(response)
+    }
+
+    // versions changed before the next poll's overlap cannot be found by it, so need not be kept
+    val keepFrom = now.getTimeInMillis - overlapSeconds * 1000L
+    val kept = new HashSet[String]
+    var count = 0
+    for (page <- ids.toList.grouped(math.max(pageSize, 1)); record <- pager.getPage(page)) {
+      val changed = Option(updatedAt(record))
+      val key = ChangeSync.version(id(record), changed.orNull)
+      if (changed.forall { _.getTimeInMillis >= keepFrom }) kept += key
+      if (!state.seen.contains(key)) {
+        f(record)
+        count += 1
+      }
+    }
+    store.save(SyncState(Some(now.getTimeInMillis), kept.toSet))
+    count
+  }
+
+  private def calendar(millis: Long) = {
+    val calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"))
+    calendar.setTimeInMillis(millis)
+    calendar
+  }
+}
+
+object ChangeSync {
+  final val DEFAULT_OVERLAP_SECONDS = 5 * 60
+
+  private[braintree] def version(id: String, updatedAt: Calendar): String = {
+    id + "@" + Option(updatedAt).map { _.getTimeInMillis.toString }.getOrElse("")
+  }
+}
+
+/**
+ * What a {@link ChangeSync} keeps between polls: when the last poll started, in epoch
+ * milliseconds, and the versions of the records it saw that the next poll may find again.
+ */
+case class SyncState(watermark: Option[Long], seen: Set[String])
+
+object SyncState {
+  val initial = SyncState(None, Set.empty)
+}
+
+trait SyncStateStore {
+  def load: SyncState
+
+  def save(state: SyncState)
+}
+
+class MemorySyncStateStore extends SyncStateStore {
+  @volatile private var state = SyncState.initial
+
+  def load = state
+
+  def save(state: SyncState) {
+    this.state = state
+  }
+}
+
+/**
+ * Keeps the state in a file: the watermark on the first line, then one seen version a line.
+ * The file is replaced whole on each save, by way of a temporary file.
+ */
+class FileSyncStateStore(file: File) extends SyncStateStore {
+
+  def load: SyncState = {
+    if (!file.exists) {
+      SyncState.initial
+    } else {
+      val source = Source.fromFile(file, "UTF-8")
+      try {
+        val lines = source.getLines.toList
+        val watermark = lines.headOption.filter { !_.isEmpty }.map { _.toLong }
+        SyncState(watermark, lines.drop(1).toSet)
+      }
+      finally {
+        source.close()
+      }
+    }
+  }
+
+  def save(state: SyncState) {
+    val partial = new File(file.getPath + ".tmp")
+    val out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(partial), "UTF-8"))
+    try {
+      out.println(state.watermark.map { _.toString }.getOrElse(""))
+      state.seen.foreach { out.println }
+    }
+    finally {
+      out.close()
+    }
+    if (!partial.renameTo(file) && !(file.delete() && partial.renameTo(file))) {
+      throw new IOException("could not move " + partial + " to " + file)
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package net.bhardy.braintree.scala
+
+import net.bhardy.braintree.scala.util.{NodeWrapper, PackedIds, SearchIdsNodeWrapper}
+
+import java.io._
+
+/**
+ * A search traversal that can be stopped and picked up again, e.g. across a deploy.
+ * The ids a search finds and the number of pages handled so far are kept in a checkpoint
+ * file; when the file is already there the ids are read back from it instead of searching
+ * again, and traversal starts at the first page not yet handled.
+ *
+ * <pre>
+ * val export = gateway.transaction.checkpointedSearch(query, new File("export.checkpoint"))
+ * export.foreachPage { transactions => write(transactions) }
+ * new File("export.checkpoint").delete()
+ * </pre>
+ *
+ * A page is recorded as done once the function given it returns, so a page that was being
+ * handled when the process stopped is handed over again on resume.
+ */
+class CheckpointedSearch[T] private[braintree](pager: Pager[T], checkpoint: File, query: String,
+                                               searchIds: => NodeWrapper) {
+
+  private lazy val state = {
+    if (checkpoint.exists) SearchCheckpoint.read(checkpoint, query)
+    else SearchCheckpoint.create(checkpoint, query, searchIds)
+  }
+
+  def ids: IndexedSeq[String] = state.ids
+
+  def pageCount: Int = (ids.size + state.pageSize - 1) / state.pageSize
+
+  def completedPages: Int = state.nextPage
+
+  def isComplete: Boolean = completedPages >= pageCount
+
+  /**
+   * Fetches each page not yet handled, in order, recording it in the checkpoint after f returns.
+   */
+  def foreachPage(f: List[T] => Unit) {
+    while (!isComplete) {
+      val page = completedPages
+      val from = page * state.pageSize
+      f(pager.getPage(ids.slice(from, math.min(from + state.pageSize, ids.size)).toList))
+      state.completed(page)
+    }
+  }
+
+  def foreach(f: T => Unit) {
+    foreachPage { _.foreach(f) }
+  }
+}
+
+/**
+ * The checkpoint file: a header holding the number of pages done, which is rewritten in
+ * place after each page, then the page size, the search it was made for and its ids.
+ */
+private[braintree] class SearchCheckpoint(file: File, val pageSize: Int, val ids: PackedIds, done: Int) {
+
+  @volatile private var pagesDone = done
+
+  def nextPage: Int = pagesDone
+
+  def completed(page: Int) {
+    val raf = new RandomAccessFile(file, "rw")
+    try {
+      raf.seek(SearchCheckpoint.NEXT_PAGE_OFFSET)
+      raf.writeInt(page + 1)
+      raf.getFD.sync()
+    }
+    finally {
+      raf.close()
+    }
+    pagesDone = page + 1
+  }
+}
+
+private[braintree] object SearchCheckpoint {
+  private val MAGIC = 0x42544350 // "BTCP"
+  private val VERSION = 1
+  private val NEXT_PAGE_OFFSET = 8
+
+  /**
+   * Searches and writes the result out whole before traversal starts, through a temporary
+   * file so that a checkpoint is never left half written.
+   */
+  def create(file: File, query: String, response: NodeWrapper): SearchCheckpoint = {
+    val pageSize = response.findInteger("page-size").intValue
+    val ids = SearchIdsNodeWrapper.ids(response)
+    val partial = new File(file.getPath + ".tmp")
+    val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partial)))
+    try {
+      out.writeInt(MAGIC)
+      out.writeInt(VERSION)
+      out.writeInt(0)
+      out.writeInt(pageSize)
+      writeString(out, query)
+      out.writeInt(ids.size)
+      ids.foreach { writeString(out, _) }
+    }
+    finally {
+      out.close()
+    }
+    if (!partial.renameTo(file) && !(file.delete() && partial.renameTo(file))) {
+      throw new IOException("could not move " + partial + " to " + file)
+    }
+    new SearchCheckpoint(file, pageSize, ids, 0)
+  }
+
+  def read(file: File, query: String): SearchCheckpoint = {
+    val in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))
+    try {
+      if (in.readInt != MAGIC || in.readInt != VERSION) {
+        throw new IOException(file + " is not a search checkpoint")
+      }
+      val nextPage = in.readInt
+      val pageSize = in.readInt
+      if (readString(in) != query) {
+        throw new IllegalArgumentException(file + " was made for a different search")
+      }
+      val count = in.readInt
+      val ids = PackedIds.newBuilder
+      for (i <- 0 until count) ids += readString(in)
+      new SearchCheckpoint(file, pageSize, ids.result(), nextPage)
+    }
+    finally {
+      in.close()
+    }
+  }
+
+  private def writeString(out: DataOutputStream, value: String) {
+    val bytes = value.getBytes("UTF-8")
+    out.writeInt(bytes.length)
+    out.write(bytes)
+  }
+
+  private def readString(in: DataInputStream): String = {
+    val bytes = new Array[Byte](in.readInt)
+    in.readFully(bytes)
+    new String(bytes, "UTF-8")
+  }
+}
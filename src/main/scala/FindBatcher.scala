@@ -0,0 +1,112 @@
+package net.bhardy.braintree.scala
+
+import net.bhardy.braintree.scala.gw.BraintreeGateway
+import net.bhardy.braintree.scala.search._
+
+import java.util.concurrent.{Executors, ThreadFactory}
+import scala.concurrent.{Await, ExecutionContext, Future}
+import scala.concurrent.duration.Duration
+
+/**
+ * Opt-in batching of find calls: lookups of the same kind made by concurrent callers within
+ * windowMillis of each other are answered by a single advanced_search, a page of ids at a time.
+ * Share one FindBatcher between the threads whose lookups should be combined.
+ *
+ * <pre>
+ * val finds = new FindBatcher(gateway)
+ * val transaction = finds.transaction.find(id)
+ * val customer = finds.vaultCustomer(transaction)
+ * </pre>
+ *
+ * Credit cards and addresses have no search by id, so the vault lookups for a transaction's
+ * card and addresses go through its customer, which includes both.
+ *
+ * Batches are fetched on the execution context, so callers blocking in find should not be
+ * running on a bounded pool of that same context. A caller waits at most timeout for its
+ * batch, then gets a TimeoutException.
+ */
+class FindBatcher(gateway: BraintreeGateway, windowMillis: Long = FindBatcher.DEFAULT_WINDOW_MILLIS,
+                  maxBatch: Int = MultiGet.CHUNK_SIZE, timeout: Duration = BatchLoader.DEFAULT_TIMEOUT)
+                 (implicit executionContext: ExecutionContext) {
+
+  private val scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory {
+    def newThread(runnable: Runnable) = {
+      val thread = new Thread(runnable, "braintree-find-batcher")
+      thread.setDaemon(true)
+      thread
+    }
+  })
+
+  private def loader[T](fetch: List[String] => List[T], id: T => String) = {
+    new BatchLoader[T]({ ids => fetch(ids).map { item => (id(item), item) }.toMap }, windowMillis, maxBatch, scheduler,
+      timeout)
+  }
+
+  val transaction: BatchLoader[Transaction] = loader(
+    gateway.transaction.fetchTransactions(new TransactionSearchRequest().snapshot, _), { _.id })
+
+  val customer: BatchLoader[Customer] = loader(
+    gateway.customer.fetchCustomers(new CustomerSearchRequest().snapshot, _), { _.id })
+
+  val subscription: BatchLoader[Subscription] = loader(
+    gateway.subscription.fetchSubscriptions(new SubscriptionSearchRequest().snapshot, _), { _.id })
+
+  val creditCardVerification: BatchLoader[CreditCardVerification] = loader(
+    gateway.creditCardVerification.fetchCreditCardVerifications(new CreditCardVerificationSearchRequest().snapshot, _),
+    { _.id })
+
+  /**
+   * As {@link Transaction#getVaultCustomer}, batched.
+   */
+  def vaultCustomer(transaction: Transaction): Option[Customer] = {
+    Option(transaction.customer.id).flatMap { id => option(customer.load(id)) }
+  }
+
+  /**
+   * As {@link Transaction#getVaultCreditCard}, found among the vault customer's cards.
+   */
+  def vaultCreditCard(transaction: Transaction): Option[CreditCard] = {
+    for {
+      token <- Option(transaction.creditCard.token)
+      owner <- vaultCustomer(transaction)
+      card <- owner.creditCards.find { _.token == token }
+    } yield card
+  }
+
+  /**
+   * As {@link Transaction#getVaultBillingAddress}, found among the vault customer's addresses.
+   */
+  def vaultBillingAddress(transaction: Transaction): Option[Address] = {
+    vaultAddress(transaction, transaction.billingAddress.id)
+  }
+
+  /**
+   * As {@link Transaction#getVaultShippingAddress}, found among the vault customer's addresses.
+   */
+  def vaultShippingAddress(transaction: Transaction): Option[Address] = {
+    vaultAddress(transaction, transaction.shippingAddress.id)
+  }
+
+  /**
+   * Sends the lookups waiting on a batch at once and stops the timer thread. Lookups made
+   * after closing fail with an IllegalStateException.
+   */
+  def close() {
+    List(transaction, customer, subscription, creditCardVerification).foreach { _.close() }
+    scheduler.shutdown()
+  }
+
+  private def vaultAddress(transaction: Transaction, addressId: String): Option[Address] = {
+    for {
+      id <- Option(addressId)
+      owner <- vaultCustomer(transaction)
+      address <- owner.addresses.find { _.id == id }
+    } yield address
+  }
+
+  private def option[T](future: Future[Option[T]]) = Await.result(future, timeout)
+}
+
+object FindBatcher {
+  final val DEFAULT_WINDOW_MILLIS = 5L
+}
@@ -0,0 +1,39 @@
+package net.bhardy.braintree.scala
+
+import scala.concurrent.{Await, ExecutionContext, Future, blocking}
+import scala.concurrent.duration.Duration
+
+/**
+ * The result of looking up several ids at once: what was found, by id, and the ids that
+ * were not, in the order they were asked for.
+ */
+case class MultiGetResult[T](found: Map[String, T], missing: List[String])
+
+/**
+ * Looks up many ids through an advanced_search endpoint, a page of ids per request, with
+ * the requests made concurrently on the execution context. Waiting for them all takes at
+ * most the given timeout, after which a TimeoutException is thrown.
+ */
+object MultiGet {
+
+  /**
+   * Ids per request; the gateway's search page size.
+   */
+  final val CHUNK_SIZE = 50
+
+  /**
+   * How long the requests may take in all.
+   */
+  final val DEFAULT_TIMEOUT = Duration(5, "minutes")
+
+  private[braintree] def apply[T](ids: Seq[String], fetch: List[String] => List[T], id: T => String,
+                                  timeout: Duration = DEFAULT_TIMEOUT)
+                                 (implicit executionContext: ExecutionContext): MultiGetResult[T] = {
+    val wanted = ids.distinct.toList
+    val searchable = wanted.filter { id => id != null && id.trim != "" }
+    val chunks = searchable.grouped(CHUNK_SIZE).toList.map { chunk => Future { blocking { fetch(chunk) } } }
+    val fetched = Await.result(Future.sequence(chunks), timeout).flatten
+    val found = fetched.map { item => (id(item), item) }.toMap
+    MultiGetResult(found, wanted.filterNot(found.contains))
+  }
+}
@@ -1,24 +1,35 @@
 package net.bhardy.braintree.scala
 
 import gw._
-import search.{TransactionSearchRequest, SubscriptionSearchRequest, CustomerSearchRequest, CreditCardVerificationSearchRequest}
+import search.{TransactionSearchRequest, SubscriptionSearchRequest, CustomerSearchRequest, CreditCardVerificationSearchRequest, SearchSnapshot}
 
+/**
+ * Fetches a page of search results by id. Pagers over a search request work from a snapshot
+ * of it taken when the pager is made, so pages may be fetched concurrently and later changes
+ * to the request do not affect them.
+ */
 abstract trait Pager[T] {
   def getPage(ids: List[String]): List[T]
 }
 
-class CreditCardVerificationPager(gateway:CreditCardVerificationGateway, query:CreditCardVerificationSearchRequest)
+class CreditCardVerificationPager(gateway:CreditCardVerificationGateway, snapshot: SearchSnapshot)
   extends Pager[CreditCardVerification] {
 
+  def this(gateway: CreditCardVerificationGateway, query: CreditCardVerificationSearchRequest) = {
+    this(gateway, query.snapshot)
+  }
+
   def getPage(ids:List[String]) = {
-    gateway.fetchCreditCardVerifications(query, ids)
+    gateway.fetchCreditCardVerifications(snapshot, ids)
   }
 }
 
 object Pager {
   def customer(gateway: CustomerGateway, query: CustomerSearchRequest) = new Pager[Customer] {
+    private val snapshot = query.snapshot
+
     def getPage(ids: List[String]): List[Customer] = {
-      gateway.fetchCustomers(query, ids)
+      gateway.fetchCustomers(snapshot, ids)
     }
   }
 
@@ -34,15 +45,23 @@ object Pager {
     }
   }
 
-  def subscription(gateway: SubscriptionGateway, search: SubscriptionSearchRequest) = new Pager[Subscription] {
+  def subscription(gateway: SubscriptionGateway, search: SubscriptionSearchRequest): Pager[Subscription] = {
+    subscription(gateway, search.snapshot)
+  }
+
+  def subscription(gateway: SubscriptionGateway, snapshot: SearchSnapshot) = new Pager[Subscription] {
     def getPage(ids: List[String]): List[Subscription] = {
-      gateway.fetchSubscriptions(search, ids)
+      gateway.fetchSubscriptions(snapshot, ids)
     }
   }
 
-  def transaction(gateway: TransactionGateway, query: TransactionSearchRequest) = new Pager[Transaction] {
+  def transaction(gateway: TransactionGateway, query: TransactionSearchRequest): Pager[Transaction] = {
+    transaction(gateway, query.snapshot)
+  }
+
+  def transaction(gateway: TransactionGateway, snapshot: SearchSnapshot) = new Pager[Transaction] {
     def getPage(ids: List[String]): List[Transaction] = {
-      gateway.fetchTransactions(query, ids)
+      gateway.fetchTransactions(snapshot, ids)
     }
   }
 }
\ No newline at end of file
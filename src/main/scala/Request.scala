@@ -1,6 +1,6 @@
 package net.bhardy.braintree.scala
 
-import util.ToXml
+import util.{ToXml, XmlWriter}
 
 /**
  * Base functionality for fluent interface request builders.
@@ -22,6 +22,10 @@ abstract class BaseRequest extends Request {
 
   final def toXml = buildRequest(xmlName).toXml
 
+  final override def writeXml(writer: XmlWriter) {
+    buildRequest(xmlName).writeXml(writer)
+  }
+
   def toQueryString(parent:String): String = throw new UnsupportedOperationException()
 
   def toQueryString: String = throw new UnsupportedOperationException()
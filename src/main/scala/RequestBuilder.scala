@@ -1,6 +1,6 @@
 package net.bhardy.braintree.scala
 
-import util.{ToXml, QueryString, StringUtils}
+import util.{ToXml, QueryString, StringUtils, XmlWriter}
 import java.text.SimpleDateFormat
 
 import xml.Elem
@@ -31,6 +31,33 @@ object RequestBuilder {
     }
   }
 
+  /**
+   * Streaming counterpart of buildXmlElement.
+   */
+  def writeXmlElement(writer: XmlWriter, tagName: String, data: Any) {
+    data match {
+      case null =>
+      case None =>
+      case Some(item) => writeXmlElement(writer, tagName, item)
+      case xmlAble: ToXml => xmlAble.writeXml(writer)
+      case calendar: Calendar => writer.element(tagName, calendarString(calendar), Some("datetime"))
+      case scalaMutableMap: MMap[String, Any] => writeMap(writer, tagName, scalaMutableMap.toMap)
+      case scalaMap: Map[String, Any] => writeMap(writer, tagName, scalaMap)
+      case list: List[Any] => {
+        writer.start(tagName, Some("array"))
+        list.foreach { writeXmlElement(writer, "item", _) }
+        writer.end(tagName)
+      }
+      case other => writer.element(tagName, other.toString)
+    }
+  }
+
+  private def writeMap(writer: XmlWriter, tagName: String, map: Map[String, Any]) {
+    writer.start(tagName)
+    for ((key, value) <- map) writeXmlElement(writer, key, value)
+    writer.end(tagName)
+  }
+
   def listToXml(tagName:String, list: List[Any]) = {
     val children = for {
       item <- list
@@ -41,12 +68,13 @@ object RequestBuilder {
   }
 
   def calendarElement(name: String, calendar: Calendar) = {
+    tag(name).withType("datetime").content(calendarString(calendar))
+  }
 
+  private def calendarString(calendar: Calendar) = {
     val dateFormat: SimpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'")
     dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"))
-    val content = dateFormat.format(calendar.getTime)
-
-    tag(name).withType("datetime").content(content)
+    dateFormat.format(calendar.getTime)
   }
 
   def formatAsXml(tagName: String, map: Map[String, Any]): Elem = {
@@ -132,4 +160,12 @@ class RequestBuilder(parent: String) extends ToXml {
     val elem = tag(parent).content(children)
     Some(elem)
   }
+
+  override def writeXml(writer: XmlWriter) {
+    writer.start(parent)
+    for ((key: String, value: AnyRef) <- elements if value != null) {
+      RequestBuilder.writeXmlElement(writer, key, value)
+    }
+    writer.end(parent)
+  }
 }
\ No newline at end of file
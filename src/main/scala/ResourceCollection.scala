@@ -1,10 +1,14 @@
 package net.bhardy.braintree.scala
 
-import net.bhardy.braintree.scala.util.NodeWrapper
-import scala.collection.JavaConversions._
+import net.bhardy.braintree.scala.streams.PagePublisher
+import _root_.org.reactivestreams.Publisher
+import net.bhardy.braintree.scala.util.{NodeWrapper, SearchIdsNodeWrapper}
 
 import java.util.Iterator
 import java.lang.Iterable
+import scala.collection.mutable.Queue
+import scala.concurrent.{Await, ExecutionContext, Future}
+import scala.concurrent.duration.Duration
 /**
  * A collection used to page through query or search results.
  *
@@ -15,7 +19,10 @@ import java.lang.Iterable
 class ResourceCollection[T](val pager: Pager[T], response: NodeWrapper) extends Iterable[T] {
 
   val pageSize = response.findInteger("page-size")
-  val ids = response.findAllStrings("ids/*").toIndexedSeq
+  /**
+   * Packed rather than one String per id, as broad searches can find millions.
+   */
+  val ids: collection.immutable.IndexedSeq[String] = SearchIdsNodeWrapper.ids(response)
 
   /**
    * Returns the approximate total size of the collection.
@@ -24,21 +31,84 @@ class ResourceCollection[T](val pager: Pager[T], response: NodeWrapper) extends
    */
   def getMaximumSize =  ids.size
 
-  def iterator: Iterator[T] = new PagedIterator[T](this)
+  def iterator: Iterator[T] = new PagedIterator(0, ids.size)
+
+  /**
+   * Divides the results into at most parts slices of whole pages, each fetching its own pages
+   * when iterated, so that they can be worked through in parallel:
+   *
+   * <pre>
+   * gateway.transaction.search(query).split(8).par.foreach { slice =>
+   *   for (transaction <- slice) { ... }
+   * }
+   * </pre>
+   */
+  def split(parts: Int): List[Slice] = {
+    require(parts > 0, "parts must be positive")
+    val pages = (ids.size + pageSize - 1) / pageSize
+    val slices = math.min(parts, pages)
+    (0 until slices).toList.map { slice =>
+      val from = pages * slice / slices * pageSize
+      val until = math.min(pages * (slice + 1) / slices * pageSize, ids.size)
+      new Slice(from, until)
+    }
+  }
+
+  /**
+   * The results for a run of whole pages of the ids, from index from until index until.
+   */
+  class Slice private[ResourceCollection](val from: Int, val until: Int) extends Iterable[T] {
 
-  def getFirst: T = pager.getPage(asScalaIterable(ids.subList(0, 1)).toList).head
+    def getMaximumSize = until - from
 
+    def iterator: Iterator[T] = new PagedIterator(from, until)
+  }
 
-  private class PagedIterator[E](resourceCollection: ResourceCollection[E]) extends Iterator[E] {
+  /**
+   * Iterates in the same order as {@link #iterator}, but keeps up to window upcoming pages
+   * being fetched on the execution context while the current one is consumed. At most
+   * window pages besides the current one are held at any time.
+   *
+   * <pre>
+   * implicit val ec = ExecutionContext.fromExecutorService(Executors.newFixedThreadPool(4))
+   * for (transaction <- gateway.transaction.search(query).prefetching(4)) { ... }
+   * </pre>
+   *
+   * The pager's getPage is then called from several threads at once.
+   */
+  def prefetching(window: Int)(implicit executionContext: ExecutionContext): Iterable[T] = {
+    require(window > 0, "window must be positive")
+    new Iterable[T] {
+      def iterator: Iterator[T] = new PrefetchingIterator(window)
+    }
+  }
+
+  /**
+   * The same results as a Reactive Streams publisher, fetching pages only as subscribers
+   * request items.
+   *
+   * @see PagePublisher
+   */
+  def publisher(implicit executionContext: ExecutionContext): Publisher[T] = {
+    new PagePublisher[T](pager, ids, pageSize)
+  }
+
+  def getFirst: T = pager.getPage(List(ids(0))).head
+
+
+  /**
+   * Iterates over the ids from index from until index until, a page at a time.
+   */
+  private class PagedIterator(from: Int, until: Int) extends Iterator[T] {
 
     private var index: Int = 0
-    private var nextIndexToFetch: Int = 0
-    private var items: List[E] = Nil
+    private var nextIndexToFetch: Int = from
+    private var items: List[T] = Nil
 
     private def nextBatchOfIds: IndexedSeq[String] = {
       var lastIdIndex: Int = nextIndexToFetch + pageSize
-      if (lastIdIndex > ids.size) {
-        lastIdIndex = ids.size
+      if (lastIdIndex > until) {
+        lastIdIndex = until
       }
       val nextIds = ids.slice(nextIndexToFetch, lastIdIndex)
       nextIndexToFetch = lastIdIndex
@@ -46,15 +116,15 @@ class ResourceCollection[T](val pager: Pager[T], response: NodeWrapper) extends
     }
 
     def hasNext: Boolean = {
-      if (nextIndexToFetch < ids.size && index == items.size) {
-        this.items = resourceCollection.pager.getPage(nextBatchOfIds.toList)
+      if (nextIndexToFetch < until && index == items.size) {
+        this.items = pager.getPage(nextBatchOfIds.toList)
         this.index = 0
       }
       (index < items.size)
     }
 
-    def next: E = {
-      val item: E = items(index)
+    def next: T = {
+      val item: T = items(index)
       index += 1
       item
     }
@@ -65,4 +135,38 @@ class ResourceCollection[T](val pager: Pager[T], response: NodeWrapper) extends
 
   }
 
+  private class PrefetchingIterator(window: Int)(implicit executionContext: ExecutionContext) extends Iterator[T] {
+
+    private val pages = ids.grouped(pageSize).map { _.toList }
+    private val inFlight = new Queue[Future[List[T]]]
+    private var items: List[T] = Nil
+
+    fill()
+
+    private def fill() {
+      while (inFlight.size < window && pages.hasNext) {
+        val pageIds = pages.next
+        inFlight.enqueue(Future { pager.getPage(pageIds) })
+      }
+    }
+
+    def hasNext: Boolean = {
+      while (items.isEmpty && !inFlight.isEmpty) {
+        items = Await.result(inFlight.dequeue, Duration.Inf)
+        fill()
+      }
+      !items.isEmpty
+    }
+
+    def next: T = {
+      if (!hasNext) throw new NoSuchElementException
+      val item = items.head
+      items = items.tail
+      item
+    }
+
+    def remove {
+      throw new UnsupportedOperationException
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package net.bhardy.braintree.scala
+
+import net.bhardy.braintree.scala.util.Binding
+import net.bhardy.braintree.scala.util.BindingNodeWrapperFactory
+
+/**
+ * {@link Binding}s for the paths the domain classes read, so transactions, subscriptions,
+ * customers, credit cards, addresses and verifications can be decoded without building
+ * a tree. Keep these in step with the constructors when adding fields: ResponseBindingsSpec
+ * reports every lookup they lack. A lookup they lack still works, by parsing the response
+ * again, and is counted in {@link BindingNodeWrapperFactory#unboundReads}.
+ *
+ * <pre>
+ * new BraintreeGateway(Environment.PRODUCTION, merchantId, publicKey, privateKey,
+ *   nodeWrapperFactory = ResponseBindings.nodeWrapperFactory)
+ * </pre>
+ */
+object ResponseBindings {
+
+  lazy val address = Binding("company", "country-code-alpha2", "country-code-alpha3", "country-code-numeric",
+    "country-name", "created-at", "customer-id", "extended-address", "first-name", "id", "last-name", "locality",
+    "postal-code", "region", "street-address", "updated-at")
+
+  lazy val modification = Binding("amount", "description", "id", "kind", "quantity", "name", "never-expires",
+    "number-of-billing-cycles", "plan-id")
+
+  lazy val descriptor = Binding("name", "phone")
+
+  lazy val disbursementDetails = Binding("disbursement-date", "settlement-currency-iso-code", "funds-held",
+    "settlement-currency-exchange-rate", "settlement-amount")
+
+  lazy val statusEvent = Binding("amount", "status", "timestamp", "source", "user")
+
+  lazy val creditCard: Binding = Binding("token", "created-at", "updated-at", "bin", "card-type", "cardholder-name",
+    "customer-id", "customer-location", "expiration-month", "expiration-year", "image-url", "default", "venmo-sdk",
+    "expired", "last-4", "commercial", "debit", "durbin-regulated", "healthcare", "payroll", "prepaid",
+    "country-of-issuance", "issuing-bank", "unique-number-identifier").
+    nest("billing-address", address).
+    repeat("subscriptions/subscription", subscription)
+
+  lazy val customer: Binding = Binding("id", "first-name", "last-name", "company", "email", "fax", "phone", "website",
+    "created-at", "updated-at").
+    repeatText("custom-fields/*").
+    repeat("credit-cards/credit-card", creditCard).
+    repeat("addresses/address", address)
+
+  lazy val subscription: Binding = Binding("balance", "billing-day-of-month", "billing-period-end-date",
+    "billing-period-start-date", "created-at", "current-billing-cycle", "days-past-due", "failure-count", "first-billing-date", "id",
+    "merchant-account-id", "never-expires", "next-billing-date", "next-billing-period-amount",
+    "number-of-billing-cycles", "paid-through-date", "payment-method-token", "plan-id", "price", "status",
+    "trial-period", "trial-duration", "trial-duration-unit", "updated-at").
+    nest("descriptor", descriptor).
+    repeat("add-ons/add-on", modification).
+    repeat("discounts/discount", modification).
+    repeat("transactions/transaction", transaction)
+
+  lazy val transaction: Binding = Binding("amount", "avs-error-response-code", "avs-postal-code-response-code",
+    "avs-street-address-response-code", "channel", "created-at", "currency-iso-code", "cvv-response-code",
+    "escrow-status", "gateway-rejection-reason", "id", "merchant-account-id", "order-id", "plan-id",
+    "processor-authorization-code", "processor-response-code", "processor-response-text", "purchase-order-number",
+    "recurring", "refunded-transaction-id", "refund-id", "service-fee-amount", "settlement-batch-id", "status",
+    "subscription-id", "tax-amount", "tax-exempt", "type", "updated-at").
+    nest("billing", address).
+    nest("credit-card", creditCard).
+    nest("customer", customer).
+    nest("disbursement-details", disbursementDetails).
+    nest("descriptor", descriptor).
+    nest("shipping", address).
+    nest("subscription", subscription).
+    repeatText("custom-fields/*").
+    repeatText("refund-ids/item").
+    repeat("status-history/status-event", statusEvent).
+    repeat("add-ons/add-on", modification).
+    repeat("discounts/discount", modification)
+
+  lazy val verification = Binding("avs-error-response-code", "avs-postal-code-response-code",
+    "avs-street-address-response-code", "cvv-response-code", "gateway-rejection-reason", "processor-response-code",
+    "processor-response-text", "merchant-account-id", "status", "id", "created-at").
+    nest("credit-card", creditCard).
+    nest("billing", address)
+
+  /**
+   * The bindings of the bound resources, and of search pages of them, by root element.
+   */
+  lazy val roots: Map[String, Binding] = Map(
+    "address" -> address,
+    "credit-card" -> creditCard,
+    "customer" -> customer,
+    "subscription" -> subscription,
+    "transaction" -> transaction,
+    "verification" -> verification,
+    "customers" -> Binding().repeat("customer", customer),
+    "subscriptions" -> Binding().repeat("subscription", subscription),
+    "transactions" -> Binding().repeat("transaction", transaction),
+    "credit-card-transactions" -> Binding().repeat("transaction", transaction),
+    "credit-card-verifications" -> Binding().repeat("verification", verification)
+  )
+
+  /**
+   * Decodes the bound resources, and search pages of them, without a tree; other responses
+   * are parsed as usual.
+   */
+  lazy val nodeWrapperFactory = new BindingNodeWrapperFactory(roots)
+}
@@ -0,0 +1,112 @@
+package net.bhardy.braintree.scala
+
+import net.bhardy.braintree.scala.search.{SearchSnapshot, ShardRange}
+import net.bhardy.braintree.scala.util.NodeWrapper
+
+import java.util.Iterator
+import java.lang.Iterable
+import scala.concurrent.{Await, ExecutionContext, Future, blocking}
+import scala.concurrent.duration.Duration
+
+/**
+ * A search divided on a range criterion into shards whose ids are searched in parallel.
+ * Each shard's ids are found with its own search; a shard finding more than maxShardSize ids
+ * is divided in two and searched again, until shards are small enough or cannot be divided.
+ *
+ * Iterating gives the results of every shard, in range order. Only the id searches run in
+ * parallel: pages are read one shard after another, with the next PAGES_AHEAD pages of the
+ * shard being read, and the first PAGES_AHEAD of the shard after it, fetched ahead on the
+ * execution context. To fetch the pages of many shards at once, work through the shards on
+ * their own, e.g. one per thread.
+ *
+ * <pre>
+ * implicit val ec = ExecutionContext.fromExecutorService(Executors.newFixedThreadPool(8))
+ * val query = new TransactionSearchRequest().status.in(Status.SETTLED)
+ * val range = query.createdAt.shardRange(startOfMonth, endOfMonth)
+ * for (transaction <- gateway.transaction.shardedSearch(query, range)) { ... }
+ * </pre>
+ */
+class ShardedSearch[T] private[braintree](query: SearchSnapshot, range: ShardRange, initialShards: Int,
+                                          maxShardSize: Int, searchIds: SearchSnapshot => NodeWrapper,
+                                          pager: SearchSnapshot => Pager[T],
+                                          timeout: Duration = ShardedSearch.DEFAULT_TIMEOUT)
+                                         (implicit executionContext: ExecutionContext) extends Iterable[T] {
+
+  require(initialShards > 0, "initialShards must be positive")
+  require(maxShardSize > 0, "maxShardSize must be positive")
+
+  /**
+   * The searched shards in range order. Searching happens the first time this is used, and
+   * throws java.util.concurrent.TimeoutException if it takes longer than timeout; the next
+   * use then searches again.
+   */
+  lazy val shards: List[ResourceCollection[T]] = {
+    val searched = Future.sequence(range.divide(initialShards).map(search))
+    Await.result(searched, timeout).flatten
+  }
+
+  def getMaximumSize: Int = shards.map { _.getMaximumSize }.sum
+
+  def iterator: Iterator[T] = new Iterator[T] {
+    private var remaining = shards
+    private var current: Iterator[T] = null
+    private var upcoming: Iterator[T] = start()
+
+    /**
+     * Begins fetching the first pages of the next shard, if there is one.
+     */
+    private def start(): Iterator[T] = remaining match {
+      case shard :: rest => {
+        remaining = rest
+        shard.prefetching(ShardedSearch.PAGES_AHEAD).iterator
+      }
+      case Nil => null
+    }
+
+    def hasNext: Boolean = {
+      while ((current == null || !current.hasNext) && upcoming != null) {
+        current = upcoming
+        upcoming = start()
+      }
+      current != null && current.hasNext
+    }
+
+    def next: T = {
+      if (!hasNext) throw new NoSuchElementException
+      current.next
+    }
+
+    def remove {
+      throw new UnsupportedOperationException
+    }
+  }
+
+  private def search(shard: ShardRange): Future[List[ResourceCollection[T]]] = {
+    val snapshot = query.withRange(shard)
+    Future { blocking { searchIds(snapshot) } } flatMap { response =>
+      val collection = new ResourceCollection[T](pager(snapshot), response)
+      if (collection.getMaximumSize > maxShardSize && shard.isDivisible) {
+        val Seq(lower, upper) = shard.divide(2).map(search)
+        for (first <- lower; second <- upper) yield first ++ second
+      } else {
+        Future.successful(List(collection))
+      }
+    }
+  }
+}
+
+object ShardedSearch {
+  final val DEFAULT_INITIAL_SHARDS = 4
+
+  final val DEFAULT_MAX_SHARD_SIZE = 10000
+
+  /**
+   * How long searching the shards' ids may take in all.
+   */
+  final val DEFAULT_TIMEOUT = Duration(5, "minutes")
+
+  /**
+   * Pages fetched ahead of the one being read while iterating a shard.
+   */
+  final val PAGES_AHEAD = 2
+}
@@ -9,6 +9,7 @@ class Subscription(node: NodeWrapper) {
   val billingDayOfMonth = node.findInteger("billing-day-of-month")
   val billingPeriodEndDate = node.findDate("billing-period-end-date")
   val billingPeriodStartDate = node.findDate("billing-period-start-date")
+  val createdAt = node.findDateTime("created-at")
   val currentBillingCycle = node.findInteger("current-billing-cycle")
   val daysPastDue = node.findInteger("days-past-due")
   val descriptor = node.findFirstOpt("descriptor").map { Descriptor.apply }
@@ -30,4 +31,5 @@ class Subscription(node: NodeWrapper) {
   val trialDuration = node.findInteger("trial-duration")
   val trialDurationUnit = EnumUtils.findByNameOpt(classOf[Subscriptions.DurationUnit])(node("trial-duration-unit"))
   val transactions = node.findAll("transactions/transaction").map{ new Transaction(_) }
+  val updatedAt = node.findDateTime("updated-at")
 }
\ No newline at end of file
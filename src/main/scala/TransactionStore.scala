@@ -0,0 +1,100 @@
+package net.bhardy.braintree.scala
+
+import net.bhardy.braintree.scala.util.{EnumUtils, NodeCodec, NodeWrapper, SegmentStore}
+import java.io.File
+import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * @param hits - transactions served from disk
+ * @param misses - lookups of transactions not held, which went to the gateway
+ * @param expired - lookups of transactions held longer than the maximum age, which were
+ *                  dropped and went to the gateway; these are counted as misses as well
+ * @param stored - transactions held
+ * @param bytes - size of the segment files, including space not yet compacted away
+ */
+case class TransactionStoreStats(hits: Long, misses: Long, expired: Long, stored: Int, bytes: Long)
+
+/**
+ * Keeps transactions that have reached a final status on local disk, so finding them again,
+ * even after a restart, needs no request to the gateway. Pass one to {@link BraintreeGateway}
+ * and transaction finds, findAll and searches use it. Transactions are held as a compact
+ * encoding of their response in a {@link SegmentStore} under the given directory.
+ *
+ * A final status does not make the whole transaction final. Its status, amount and payment
+ * details no longer change, but these can:
+ *  - disbursement details, filled in when the funds are disbursed, days after settling
+ *  - escrow status, as held funds are released or refunded
+ *  - refund ids and status history, as the transaction is refunded
+ * A refund, escrow change or other write through the transaction gateway drops the stored copy.
+ * Changes made elsewhere, such as a refund from the control panel or a disbursement, are not
+ * seen until the copy is older than maxAgeMillis, when it is dropped and found again from the
+ * gateway. Remove the ids, or clear the directory, to see such a change sooner.
+ *
+ * Only one store may use a directory at a time.
+ */
+class TransactionStore(directory: File, segmentBytes: Long = SegmentStore.DEFAULT_SEGMENT_BYTES,
+                       terminal: Set[Transactions.Status] = TransactionStore.TERMINAL,
+                       maxAgeMillis: Long = TransactionStore.DEFAULT_MAX_AGE_MILLIS,
+                       clock: () => Long = { () => System.currentTimeMillis }) {
+
+  require(maxAgeMillis > 0, "maxAgeMillis must be positive")
+
+  private val segments = new SegmentStore(directory, segmentBytes)
+  private val hits = new AtomicLong
+  private val misses = new AtomicLong
+  private val expired = new AtomicLong
+
+  def get(id: String): Option[Transaction] = find(id).map { new Transaction(_) }
+
+  private[braintree] def find(id: String): Option[NodeWrapper] = {
+    val found = segments.get(id).flatMap { bytes =>
+      if (clock() - ByteBuffer.wrap(bytes).getLong < maxAgeMillis) {
+        Some(NodeCodec.decode(bytes.drop(8)))
+      } else {
+        segments.remove(id)
+        expired.incrementAndGet
+        None
+      }
+    }
+    (if (found.isDefined) hits else misses).incrementAndGet
+    found
+  }
+
+  /**
+   * Stores a transaction response, with the time it was stored, if its status is final;
+   * otherwise does nothing.
+   */
+  private[braintree] def remember(node: NodeWrapper) {
+    val status = EnumUtils.findByNameOpt(classOf[Transactions.Status])(node("status"))
+    if (terminal.contains(status)) node("id") foreach { id =>
+      val encoded = NodeCodec.encode(node)
+      segments.put(id, ByteBuffer.allocate(8 + encoded.length).putLong(clock()).put(encoded).array)
+    }
+  }
+
+  def remove(id: String) {
+    segments.remove(id)
+  }
+
+  def compact() {
+    segments.compact()
+  }
+
+  def close() {
+    segments.close()
+  }
+
+  def stats = TransactionStoreStats(hits.get, misses.get, expired.get, segments.size, segments.bytes)
+}
+
+object TransactionStore {
+  import Transactions.Status._
+
+  val TERMINAL: Set[Transactions.Status] = Set(SETTLED, VOIDED, FAILED, GATEWAY_REJECTED)
+
+  /**
+   * A day, so disbursements and control panel refunds are seen by the day after.
+   */
+  final val DEFAULT_MAX_AGE_MILLIS: Long = 24L * 60 * 60 * 1000
+}
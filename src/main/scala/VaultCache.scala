@@ -0,0 +1,168 @@
+package net.bhardy.braintree.scala
+
+import net.bhardy.braintree.scala.exceptions.NotFoundException
+import net.bhardy.braintree.scala.util.LruCache
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Sizing and lifetimes for a {@link VaultCache}.
+ *
+ * @param maxEntries - most customers, and separately most credit cards and addresses, kept at once.
+ * @param maxWeight - most records kept per kind, counting those embedded in a customer or credit card.
+ * @param customerTtlMillis - how long a found customer is served from the cache.
+ * @param creditCardTtlMillis - how long a found credit card is served from the cache.
+ * @param addressTtlMillis - how long a found address is served from the cache.
+ * @param notFoundTtlMillis - how long a find that raised NotFoundException keeps raising it
+ *                          without asking the gateway again, 0 to always ask.
+ */
+case class VaultCacheSettings(
+                               maxEntries: Int = 10000,
+                               maxWeight: Long = 100000,
+                               customerTtlMillis: Long = 60000,
+                               creditCardTtlMillis: Long = 60000,
+                               addressTtlMillis: Long = 60000,
+                               notFoundTtlMillis: Long = 0
+                               )
+
+/**
+ * @param hits - finds answered from the cache, including cached not founds
+ * @param misses - finds sent to the gateway
+ * @param invalidations - writes, webhooks and clears that dropped cached records
+ * @param evictions - records dropped to stay within maxEntries or maxWeight
+ */
+case class VaultCacheStats(hits: Long, misses: Long, invalidations: Long, evictions: Long)
+
+/**
+ * Serves repeated finds of customers, credit cards and addresses from memory. Pass one to
+ * {@link BraintreeGateway} and the finds, creates, updates and deletes of its customer,
+ * creditCard and address gateways use it, as does webhookNotification.parse. A write through
+ * those gateways drops every cached record it may have changed, including copies embedded in
+ * other records: a customer's cards and addresses, and a card's billing address.
+ *
+ * Writes made elsewhere, such as another process or a transaction that stores its payment
+ * details in the vault, are only seen once the cached record expires.
+ */
+class VaultCache(settings: VaultCacheSettings = VaultCacheSettings(),
+                 clock: () => Long = { () => System.currentTimeMillis }) {
+
+  private case class Cached[V](value: Option[V], expiresAt: Long)
+
+  private val customers = new LruCache[String, Cached[Customer]](settings.maxEntries, settings.maxWeight, { cached =>
+    1L + cached.value.map { customer => customer.creditCards.size + customer.addresses.size }.getOrElse(0)
+  })
+
+  private val creditCards = new LruCache[String, Cached[CreditCard]](settings.maxEntries, settings.maxWeight, { cached =>
+    1L + cached.value.map { card => card.billingAddress.size + card.subscriptions.size }.getOrElse(0)
+  })
+
+  private val addresses = new LruCache[(String, String), Cached[Address]](settings.maxEntries, settings.maxWeight)
+
+  private val hits = new AtomicLong
+  private val misses = new AtomicLong
+  private val invalidations = new AtomicLong
+
+  private[braintree] def customer(id: String)(find: => Customer): Customer = {
+    read(customers, id, settings.customerTtlMillis)(find)
+  }
+
+  private[braintree] def creditCard(token: String)(find: => CreditCard): CreditCard = {
+    read(creditCards, token, settings.creditCardTtlMillis)(find)
+  }
+
+  private[braintree] def address(customerId: String, id: String)(find: => Address): Address = {
+    read(addresses, (customerId, id), settings.addressTtlMillis)(find)
+  }
+
+  /**
+   * Drops the customer along with its cached credit cards and addresses.
+   */
+  def invalidateCustomer(id: String) {
+    synchronized {
+      invalidations.incrementAndGet
+      customers.remove(id)
+      creditCards.removeWhere { (token, cached) => cached.value.exists { _.customerId == id } }
+      addresses.removeWhere { (key, cached) => key._1 == id }
+    }
+  }
+
+  /**
+   * Drops the credit card and any cached customer holding it.
+   */
+  def invalidateCreditCard(token: String) {
+    synchronized {
+      invalidations.incrementAndGet
+      val owner = creditCards.get(token).flatMap { _.value }.map { _.customerId }
+      creditCards.remove(token)
+      customers.removeWhere { (id, cached) =>
+        owner == Some(id) || cached.value.exists { _.creditCards.exists { _.token == token } }
+      }
+    }
+  }
+
+  /**
+   * Drops the address, its customer, and the customer's credit cards billed to it.
+   */
+  def invalidateAddress(customerId: String, id: String) {
+    synchronized {
+      invalidations.incrementAndGet
+      addresses.remove((customerId, id))
+      customers.remove(customerId)
+      creditCards.removeWhere { (token, cached) =>
+        cached.value.exists { card => card.customerId == customerId && card.billingAddress.exists { _.id == id } }
+      }
+    }
+  }
+
+  /**
+   * Drops the records a webhook says have changed. Subscription notifications change the
+   * subscriptions embedded in the paying credit card, and so in its customer.
+   */
+  def onWebhook(notification: WebhookNotification) {
+    for (subscription <- notification.subscription; token <- Option(subscription.paymentMethodToken)) {
+      invalidateCreditCard(token)
+    }
+  }
+
+  def clear() {
+    synchronized {
+      invalidations.incrementAndGet
+      customers.clear()
+      creditCards.clear()
+      addresses.clear()
+    }
+  }
+
+  def stats = VaultCacheStats(hits.get, misses.get, invalidations.get,
+    customers.evicted + creditCards.evicted + addresses.evicted)
+
+  private def read[K, V](cache: LruCache[K, Cached[V]], key: K, ttlMillis: Long)(find: => V): V = {
+    val now = clock()
+    cache.get(key) match {
+      case Some(cached) if now < cached.expiresAt => {
+        hits.incrementAndGet
+        cached.value getOrElse { throw new NotFoundException }
+      }
+      case _ => {
+        misses.incrementAndGet
+        // a write during the find may have changed the record after the gateway read it
+        val invalidationsBefore = invalidations.get
+        def keep(cached: Cached[V]) {
+          synchronized {
+            if (invalidations.get == invalidationsBefore) cache.put(key, cached)
+          }
+        }
+        try {
+          val value = find
+          keep(Cached(Some(value), now + ttlMillis))
+          value
+        }
+        catch {
+          case e: NotFoundException => {
+            if (settings.notFoundTtlMillis > 0) keep(Cached(None, now + settings.notFoundTtlMillis))
+            throw e
+          }
+        }
+      }
+    }
+  }
+}
@@ -2,7 +2,7 @@ package net.bhardy.braintree.scala.gw
 
 import net.bhardy.braintree.scala.exceptions.NotFoundException
 import net.bhardy.braintree.scala.util.Http
-import net.bhardy.braintree.scala.{Address, AddressRequest}
+import net.bhardy.braintree.scala.{Address, AddressRequest, VaultCache}
 
 /**
  * Provides methods to create, delete, find, and update {@link Address} objects.
@@ -14,7 +14,7 @@ import net.bhardy.braintree.scala.{Address, AddressRequest}
  * gateway.address().create(...)
  * </pre>
  */
-class AddressGateway(http: Http) {
+class AddressGateway(http: Http, vaultCache: Option[VaultCache] = None) {
 
   /**
    * Creates an {@link Address} for a {@link Customer}.
@@ -24,7 +24,9 @@ class AddressGateway(http: Http) {
    */
   def create(customerId: String, request: AddressRequest): Result[Address] = {
     val node = http.post("/customers/" + customerId + "/addresses", request)
-    Result.address(node)
+    val result = Result.address(node)
+    for (cache <- vaultCache; address <- result) cache.invalidateAddress(customerId, address.id)
+    result
   }
 
   /**
@@ -35,6 +37,7 @@ class AddressGateway(http: Http) {
    */
   def delete(customerId: String, id: String): Result[Address] = {
     http.delete("/customers/" + customerId + "/addresses/" + id)
+    vaultCache foreach { _.invalidateAddress(customerId, id) }
     Result.deleted
   }
 
@@ -46,7 +49,8 @@ class AddressGateway(http: Http) {
    */
   def find(customerId: String, id: String): Address = {
     if (customerId == null || (customerId.trim == "") || id == null || (id.trim == "")) throw new NotFoundException
-    new Address(http.get("/customers/" + customerId + "/addresses/" + id))
+    def fetch = new Address(http.get("/customers/" + customerId + "/addresses/" + id))
+    vaultCache map { _.address(customerId, id)(fetch) } getOrElse fetch
   }
 
   /**
@@ -58,6 +62,7 @@ class AddressGateway(http: Http) {
    */
   def update(customerId: String, id: String, request: AddressRequest): Result[Address] = {
     val node = http.put("/customers/" + customerId + "/addresses/" + id, request)
+    vaultCache foreach { _.invalidateAddress(customerId, id) }
     Result.address(node)
   }
 }
@@ -0,0 +1,96 @@
+package net.bhardy.braintree.scala.gw
+
+import net.bhardy.braintree.scala.util.ConnectionPoolSettings
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+import scala.concurrent.ExecutionContext
+
+/**
+ * Non-blocking counterpart of {@link BraintreeGateway}. Every operation returns a
+ * scala.concurrent.Future instead of tying up the calling thread for the round trip.
+ *
+ * Calls are carried out by the wrapped gateway on the supplied ExecutionContext, each
+ * holding one of its threads until the response is read. At most as many calls run at
+ * once as the context has threads, and at most maxConnectionsPerRoute of them (20 by
+ * default) are on the wire; the rest wait for a connection, up to acquireTimeoutMillis.
+ * Calls beyond the context's threads queue on the context without holding a thread.
+ *
+ * <pre>
+ * val async = AsyncBraintreeGateway(gateway)
+ * for {
+ *   customer <- async.customer.find("customer_id")
+ *   result <- async.transaction.sale(request)
+ * } yield result
+ * </pre>
+ *
+ * @param gateway the gateway doing the actual work
+ * @param executionContext where the gateway calls run
+ */
+class AsyncBraintreeGateway(val gateway: BraintreeGateway)(implicit executionContext: ExecutionContext) {
+
+  def addOn = new AsyncAddOnGateway(gateway.addOn)
+
+  def address = new AsyncAddressGateway(gateway.address)
+
+  def creditCard = new AsyncCreditCardGateway(gateway.creditCard)
+
+  def creditCardVerification = new AsyncCreditCardVerificationGateway(gateway.creditCardVerification)
+
+  def customer = new AsyncCustomerGateway(gateway.customer)
+
+  def discount = new AsyncDiscountGateway(gateway.discount)
+
+  def merchantAccount = new AsyncMerchantAccountGateway(gateway.merchantAccount)
+
+  def plan = new AsyncPlanGateway(gateway.plan)
+
+  def settlementBatchSummary = new AsyncSettlementBatchSummaryGateway(gateway.settlementBatchSummary)
+
+  def subscription = new AsyncSubscriptionGateway(gateway.subscription)
+
+  def transaction = new AsyncTransactionGateway(gateway.transaction)
+
+  def transparentRedirect = new AsyncTransparentRedirectGateway(gateway.transparentRedirect)
+}
+
+object AsyncBraintreeGateway {
+
+  /**
+   * Wraps the gateway with a dedicated thread pool sized to its connection pool,
+   * which is the most requests it can have in flight anyway: with the default
+   * settings, 20 calls run at once and later ones queue until a thread is free.
+   * Call {@link #shutdown} on the result when done with it.
+   */
+  def apply(gateway: BraintreeGateway): AsyncBraintreeGateway with Shutdown = {
+    val threads = gateway.connectionPoolStats.map { _.maxConnections } getOrElse {
+      ConnectionPoolSettings().maxConnectionsPerRoute
+    }
+    val executor = Executors.newFixedThreadPool(threads, daemonThreads)
+    new AsyncBraintreeGateway(gateway)(ExecutionContext.fromExecutorService(executor)) with Shutdown {
+      val executorService = executor
+    }
+  }
+
+  trait Shutdown {
+    protected def executorService: ExecutorService
+
+    /**
+     * Stops the dedicated threads once already submitted operations finish.
+     */
+    def shutdown() {
+      executorService.shutdown()
+    }
+  }
+
+  private val daemonThreads = new ThreadFactory {
+    private val count = new AtomicInteger
+
+    def newThread(runnable: Runnable) = {
+      val thread = new Thread(runnable, "braintree-async-" + count.incrementAndGet)
+      thread.setDaemon(true)
+      thread
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package net.bhardy.braintree.scala.gw
+
+import net.bhardy.braintree.scala._
+import net.bhardy.braintree.scala.search.CreditCardVerificationSearchRequest
+import net.bhardy.braintree.scala.search.CustomerSearchRequest
+import net.bhardy.braintree.scala.search.SubscriptionSearchRequest
+import net.bhardy.braintree.scala.search.TransactionSearchRequest
+import java.util.Calendar
+import scala.concurrent.ExecutionContext
+import scala.concurrent.Future
+import scala.concurrent.blocking
+import scala.math.BigDecimal
+
+/**
+ * Future returning mirrors of the blocking gateways, obtained through {@link AsyncBraintreeGateway}.
+ * Failures that the blocking gateways throw, such as NotFoundException, fail the Future instead.
+ *
+ * Each call holds a thread of the execution context for its whole round trip. It is marked as
+ * blocking, so a context that can grow, such as the global one, adds threads instead of starving
+ * its other work.
+ */
+abstract class AsyncGateway(implicit executionContext: ExecutionContext) {
+  protected def async[T](call: => T): Future[T] = Future(blocking(call))
+}
+
+class AsyncAddOnGateway(gateway: AddOnGateway)(implicit ec: ExecutionContext) extends AsyncGateway {
+  def all: Future[List[AddOn]] = async { gateway.all }
+}
+
+class AsyncAddressGateway(gateway: AddressGateway)(implicit ec: ExecutionContext) extends AsyncGateway {
+  def create(customerId: String, request: AddressRequest): Future[Result[Address]] = async {
+    gateway.create(customerId, request)
+  }
+
+  def delete(customerId: String, id: String): Future[Result[Address]] = async { gateway.delete(customerId, id) }
+
+  def find(customerId: String, id: String): Future[Address] = async { gateway.find(customerId, id) }
+
+  def update(customerId: String, id: String, request: AddressRequest): Future[Result[Address]] = async {
+    gateway.update(customerId, id, request)
+  }
+}
+
+class AsyncCreditCardGateway(gateway: CreditCardGateway)(implicit ec: ExecutionContext) extends AsyncGateway {
+  def create(request: CreditCardRequest): Future[Result[CreditCard]] = async { gateway.create(request) }
+
+  def delete(token: String): Future[Result[CreditCard]] = async { gateway.delete(token) }
+
+  def find(token: String): Future[CreditCard] = async { gateway.find(token) }
+
+  def update(token: String, request: CreditCardRequest): Future[Result[CreditCard]] = async {
+    gateway.update(token, request)
+  }
+
+  def expired: Future[ResourceCollection[CreditCard]] = async { gateway.expired }
+
+  def expiringBetween(start: Calendar, end: Calendar): Future[ResourceCollection[CreditCard]] = async {
+    gateway.expiringBetween(start, end)
+  }
+}
+
+class AsyncCreditCardVerificationGateway(gateway: CreditCardVerificationGateway)(implicit ec: ExecutionContext)
+  extends AsyncGateway {
+
+  def find(id: String): Future[CreditCardVerification] = async { gateway.find(id) }
+
+  def search(query: CreditCardVerificationSearchRequest): Future[ResourceCollection[CreditCardVerification]] = async {
+    gateway.search(query)
+  }
+}
+
+class AsyncCustomerGateway(gateway: CustomerGateway)(implicit ec: ExecutionContext) extends AsyncGateway {
+  def all: Future[ResourceCollection[Customer]] = async { gateway.all }
+
+  def create(request: CustomerRequest): Future[Result[Customer]] = async { gateway.create(request) }
+
+  def delete(id: String): Future[Result[Customer]] = async { gateway.delete(id) }
+
+  def find(id: String): Future[Customer] = async { gateway.find(id) }
+
+  def search(query: CustomerSearchRequest): Future[ResourceCollection[Customer]] = async { gateway.search(query) }
+
+  def update(id: String, request: CustomerRequest): Future[Result[Customer]] = async { gateway.update(id, request) }
+}
+
+class AsyncDiscountGateway(gateway: DiscountGateway)(implicit ec: ExecutionContext) extends AsyncGateway {
+  def all: Future[List[Discount]] = async { gateway.all }
+}
+
+class AsyncMerchantAccountGateway(gateway: MerchantAccountGateway)(implicit ec: ExecutionContext) extends AsyncGateway {
+  def create(request: MerchantAccountRequest): Future[Result[MerchantAccount]] = async { gateway.create(request) }
+}
+
+class AsyncPlanGateway(gateway: PlanGateway)(implicit ec: ExecutionContext) extends AsyncGateway {
+  def all: Future[List[Plan]] = async { gateway.all }
+}
+
+class AsyncSettlementBatchSummaryGateway(gateway: SettlementBatchSummaryGateway)(implicit ec: ExecutionContext)
+  extends AsyncGateway {
+
+  def generate(settlementDate: Calendar): Future[Result[SettlementBatchSummary]] = async {
+    gateway.generate(settlementDate)
+  }
+
+  def generate(settlementDate: Calendar, groupByCustomField: String): Future[Result[SettlementBatchSummary]] = async {
+    gateway.generate(settlementDate, groupByCustomField)
+  }
+}
+
+class AsyncSubscriptionGateway(gateway: SubscriptionGateway)(implicit ec: ExecutionContext) extends AsyncGateway {
+  def cancel(id: String): Future[Result[Subscription]] = async { gateway.cancel(id) }
+
+  def create(request: SubscriptionRequest): Future[Result[Subscription]] = async { gateway.create(request) }
+
+  def delete(customerId: String, id: String): Future[Result[Subscription]] = async { gateway.delete(customerId, id) }
+
+  def find(id: String): Future[Subscription] = async { gateway.find(id) }
+
+  def update(id: String, request: SubscriptionRequest): Future[Result[Subscription]] = async {
+    gateway.update(id, request)
+  }
+
+  def search(searchRequest: SubscriptionSearchRequest): Future[ResourceCollection[Subscription]] = async {
+    gateway.search(searchRequest)
+  }
+
+  def retryCharge(subscriptionId: String): Future[Result[Transaction]] = async { gateway.retryCharge(subscriptionId) }
+
+  def retryCharge(subscriptionId: String, amount: BigDecimal): Future[Result[Transaction]] = async {
+    gateway.retryCharge(subscriptionId, amount)
+  }
+}
+
+class AsyncTransactionGateway(gateway: TransactionGateway)(implicit ec: ExecutionContext) extends AsyncGateway {
+  def cloneTransaction(id: String, request: TransactionCloneRequest): Future[Result[Transaction]] = async {
+    gateway.cloneTransaction(id, request)
+  }
+
+  def credit(request: TransactionRequest): Future[Result[Transaction]] = async { gateway.credit(request) }
+
+  def find(id: String): Future[Transaction] = async { gateway.find(id) }
+
+  def refund(id: String): Future[Result[Transaction]] = async { gateway.refund(id) }
+
+  def refund(id: String, amount: BigDecimal): Future[Result[Transaction]] = async { gateway.refund(id, amount) }
+
+  def sale(request: TransactionRequest): Future[Result[Transaction]] = async { gateway.sale(request) }
+
+  def search(query: TransactionSearchRequest): Future[ResourceCollection[Transaction]] = async { gateway.search(query) }
+
+  def cancelRelease(id: String): Future[Result[Transaction]] = async { gateway.cancelRelease(id) }
+
+  def holdInEscrow(id: String): Future[Result[Transaction]] = async { gateway.holdInEscrow(id) }
+
+  def releaseFromEscrow(id: String): Future[Result[Transaction]] = async { gateway.releaseFromEscrow(id) }
+
+  def submitForSettlement(id: String): Future[Result[Transaction]] = async { gateway.submitForSettlement(id) }
+
+  def submitForSettlement(id: String, amount: BigDecimal): Future[Result[Transaction]] = async {
+    gateway.submitForSettlement(id, amount)
+  }
+
+  def voidTransaction(id: String): Future[Result[Transaction]] = async { gateway.voidTransaction(id) }
+}
+
+class AsyncTransparentRedirectGateway(gateway: TransparentRedirectGateway)(implicit ec: ExecutionContext)
+  extends AsyncGateway {
+
+  def confirmCreditCard(queryString: String): Future[Result[CreditCard]] = async {
+    gateway.confirmCreditCard(queryString)
+  }
+
+  def confirmCustomer(queryString: String): Future[Result[Customer]] = async { gateway.confirmCustomer(queryString) }
+
+  def confirmTransaction(queryString: String): Future[Result[Transaction]] = async {
+    gateway.confirmTransaction(queryString)
+  }
+}
@@ -2,8 +2,14 @@ package net.bhardy.braintree.scala.gw
 
 import net.bhardy.braintree.scala.org.apache.commons.codec.binary.Base64
 import net.bhardy.braintree.scala.util.ClientLibraryProperties
+import net.bhardy.braintree.scala.util.CoalescingStats
+import net.bhardy.braintree.scala.util.ConnectionPoolSettings
 import net.bhardy.braintree.scala.util.Http
+import net.bhardy.braintree.scala.util.HttpTransport
+import net.bhardy.braintree.scala.util.NodeWrapperFactory
+import net.bhardy.braintree.scala.util.PoolStats
 import net.bhardy.braintree.scala.util.TrUtil
+import net.bhardy.braintree.scala.util.UrlConnectionTransport
 import net.bhardy.braintree.scala._
 
 /**
@@ -48,8 +54,38 @@ import net.bhardy.braintree.scala._
  *                 the public key provided by Braintree.
  * @param privateKey
  *                 the private key provided by Braintree.
+ * @param connectionPoolSettings
+ *                 sizing and timeouts for the connections held open to the gateway.
+ *                 A single BraintreeGateway is safe to share between request threads.
+ *                 For the JDK to keep more than 5 of them alive between requests, call
+ *                 { @link ConnectionPool#widenKeepAliveCache} first; it is JVM-wide, so not automatic.
+ * @param transport
+ *                 replaces the default { @link UrlConnectionTransport}, e.g. with an
+ *                 { @link InMemoryTransport} for tests. connectionPoolSettings is then unused.
+ * @param nodeWrapperFactory
+ *                 parses responses; { @link LazyNodeWrapperFactory} suits large responses of which little is read.
+ * @param coalesceReads
+ *                 shares one request among concurrent identical reads, such as finds of the same
+ *                 customer or plan lists. See { @link Http}.
+ * @param vaultCache
+ *                 serves repeated finds of customers, credit cards and addresses from memory,
+ *                 dropping records as they are written or named by webhooks. See { @link VaultCache}.
+ * @param transactionStore
+ *                 keeps transactions with a final status on local disk, serving later finds
+ *                 and searches of them without a request. See { @link TransactionStore}.
  */
-class BraintreeGateway(environment: Environment, merchantId: String, publicKey: String, privateKey: String) {
+class BraintreeGateway(environment: Environment, merchantId: String, publicKey: String, privateKey: String,
+                       connectionPoolSettings: ConnectionPoolSettings = ConnectionPoolSettings(),
+                       transport: Option[HttpTransport] = None,
+                       nodeWrapperFactory: NodeWrapperFactory = NodeWrapperFactory,
+                       coalesceReads: Boolean = false,
+                       vaultCache: Option[VaultCache] = None,
+                       transactionStore: Option[TransactionStore] = None) {
+
+  def this(environment: Environment, merchantId: String, publicKey: String, privateKey: String,
+           transport: HttpTransport) = {
+    this(environment, merchantId, publicKey, privateKey, ConnectionPoolSettings(), Some(transport))
+  }
 
   val baseMerchantURL = environment.baseURL + "/merchants/" + merchantId
 
@@ -57,7 +93,29 @@ class BraintreeGateway(environment: Environment, merchantId: String, publicKey:
 
   val authorizationHeader = "Basic " + Base64.encodeBase64String((publicKey + ":" + privateKey).getBytes).trim
 
-  val http = new Http(authorizationHeader, baseMerchantURL, environment.certificateFilenames, BraintreeGateway.VERSION)
+  val http = new Http(transport getOrElse {
+    new UrlConnectionTransport(authorizationHeader, baseMerchantURL, environment.certificateFilenames,
+      BraintreeGateway.VERSION, connectionPoolSettings)
+  }, nodeWrapperFactory, coalesceReads)
+
+  /**
+   * Returns a snapshot of how many gateway connections are in use,
+   * if the transport pools connections.
+   */
+  def connectionPoolStats: Option[PoolStats] = http.transport.poolStats
+
+  /**
+   * Returns how many reads were sent to the gateway and how many shared another's response,
+   * if coalesceReads is on.
+   */
+  def coalescingStats: Option[CoalescingStats] = http.coalescingStats
+
+  /**
+   * Prepares TLS to the gateway ahead of the first request. See {@link Http#warmUp}.
+   */
+  def warmUp() {
+    http.warmUp()
+  }
 
   /**
    * Returns an {@link AddOnGateway} for interacting with {@link AddOn}
@@ -73,7 +131,7 @@ class BraintreeGateway(environment: Environment, merchantId: String, publicKey:
    *
    * @return an { @link AddressGateway}.
    */
-  def address = new AddressGateway(http)
+  def address = new AddressGateway(http, vaultCache)
 
   /**
    * Returns an {@link CreditCardGateway} for interacting with
@@ -81,7 +139,7 @@ class BraintreeGateway(environment: Environment, merchantId: String, publicKey:
    *
    * @return an { @link CreditCardGateway}.
    */
-  def creditCard = new CreditCardGateway(http, configuration)
+  def creditCard = new CreditCardGateway(http, configuration, vaultCache)
 
   def creditCardVerification = new CreditCardVerificationGateway(http, configuration)
 
@@ -91,7 +149,7 @@ class BraintreeGateway(environment: Environment, merchantId: String, publicKey:
    *
    * @return an { @link CustomerGateway}.
    */
-  def customer = new CustomerGateway(http, configuration)
+  def customer = new CustomerGateway(http, configuration, vaultCache)
 
   /**
    * Returns an {@link DiscountGateway} for interacting with {@link Discount}
@@ -124,11 +182,11 @@ class BraintreeGateway(environment: Environment, merchantId: String, publicKey:
    *
    * @return an { @link TransactionGateway}.
    */
-  def transaction = new TransactionGateway(http, configuration)
+  def transaction = new TransactionGateway(http, configuration, transactionStore)
 
   def transparentRedirect = new TransparentRedirectGateway(http, configuration)
 
-  def webhookNotification = new WebhookNotificationGateway(configuration)
+  def webhookNotification = new WebhookNotificationGateway(configuration, vaultCache)
 
   def webhookTesting = new WebhookTestingGateway(configuration)
 
@@ -28,7 +28,7 @@ import search.IdsSearchRequest
  * target="_blank">http://www.braintreepayments.com/gateway/credit-card-
  * verification-api</a>
  */
-class CreditCardGateway(http: Http, configuration: Configuration) {
+class CreditCardGateway(http: Http, configuration: Configuration, vaultCache: Option[VaultCache] = None) {
 
   /**
    * Creates an {@link CreditCard}.
@@ -39,7 +39,12 @@ class CreditCardGateway(http: Http, configuration: Configuration) {
    */
   def create(request: CreditCardRequest): Result[CreditCard] = {
     val node = http.post("/payment_methods", request)
-    Result.creditCard(node)
+    val result = Result.creditCard(node)
+    for (cache <- vaultCache; card <- result) {
+      cache.invalidateCreditCard(card.token)
+      cache.invalidateCustomer(card.customerId)
+    }
+    result
   }
 
   /**
@@ -51,6 +56,7 @@ class CreditCardGateway(http: Http, configuration: Configuration) {
    */
   def delete(token: String): Result[CreditCard] = {
     http.delete("/payment_methods/" + token)
+    vaultCache foreach { _.invalidateCreditCard(token) }
     Result.deleted
   }
 
@@ -64,7 +70,8 @@ class CreditCardGateway(http: Http, configuration: Configuration) {
    */
   def find(token: String): CreditCard = {
     if ((token.trim == "") || token == null) throw new NotFoundException
-    new CreditCard(http.get("/payment_methods/" + token))
+    def fetch = new CreditCard(http.get("/payment_methods/" + token))
+    vaultCache map { _.creditCard(token)(fetch) } getOrElse fetch
   }
 
   /**
@@ -78,7 +85,11 @@ class CreditCardGateway(http: Http, configuration: Configuration) {
    */
   def update(token: String, request: CreditCardRequest): Result[CreditCard] = {
     val node = http.put("/payment_methods/" + token, request)
-    Result.creditCard(node)
+    val result = Result.creditCard(node)
+    vaultCache foreach { _.invalidateCreditCard(token) }
+    // a new billing address also changes the customer's addresses
+    for (cache <- vaultCache; card <- result) cache.invalidateCustomer(card.customerId)
+    result
   }
 
   /**
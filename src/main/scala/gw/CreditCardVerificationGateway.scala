@@ -3,14 +3,16 @@ package net.bhardy.braintree.scala.gw
 import net.bhardy.braintree.scala.exceptions.NotFoundException
 import net.bhardy.braintree.scala.util.Http
 import net.bhardy.braintree.scala.{CreditCardVerificationPager, ResourceCollection, CreditCardVerification}
-import net.bhardy.braintree.scala.search.CreditCardVerificationSearchRequest
+import net.bhardy.braintree.scala.{MultiGet, MultiGetResult, ShardedSearch}
+import net.bhardy.braintree.scala.search.{CreditCardVerificationSearchRequest, SearchSnapshot, ShardRange}
+import scala.concurrent.ExecutionContext
+import scala.concurrent.duration.Duration
 
 class CreditCardVerificationGateway(http: Http, configuration: Configuration) {
 
   private[braintree]
-  def fetchCreditCardVerifications(query: CreditCardVerificationSearchRequest, ids: List[String]): List[CreditCardVerification] = {
-    query.ids.in(ids)
-    val response = http.post("/verifications/advanced_search", query)
+  def fetchCreditCardVerifications(query: SearchSnapshot, ids: List[String]): List[CreditCardVerification] = {
+    val response = http.post("/verifications/advanced_search", query.withIds(ids))
     response.findAll("verification").map { new CreditCardVerification(_) }
   }
 
@@ -19,8 +21,34 @@ class CreditCardVerificationGateway(http: Http, configuration: Configuration) {
     new CreditCardVerification(http.get("/verifications/" + id))
   }
 
+  /**
+   * Finds the {@link CreditCardVerification CreditCardVerifications} with the given ids, looking them up a page at a time
+   * with the pages requested concurrently.
+   * @param timeout how long to wait for every page; a TimeoutException is thrown after it.
+   * @return the verifications found by id, and the ids not found.
+   */
+  def findAll(ids: Seq[String], timeout: Duration = MultiGet.DEFAULT_TIMEOUT)
+             (implicit executionContext: ExecutionContext): MultiGetResult[CreditCardVerification] = {
+    MultiGet(ids, fetchCreditCardVerifications(new CreditCardVerificationSearchRequest().snapshot, _),
+      { verification: CreditCardVerification => verification.id }, timeout)
+  }
+
   def search(query: CreditCardVerificationSearchRequest): ResourceCollection[CreditCardVerification] = {
     val node = http.post("/verifications/advanced_search_ids", query)
     new ResourceCollection[CreditCardVerification](new CreditCardVerificationPager(this, query), node)
   }
+
+  /**
+   * Like {@link #search}, but divided on a range criterion into shards searched in parallel,
+   * with shards finding more than maxShardSize verifications divided again.
+   */
+  def shardedSearch(query: CreditCardVerificationSearchRequest, range: ShardRange,
+                    initialShards: Int = ShardedSearch.DEFAULT_INITIAL_SHARDS,
+                    maxShardSize: Int = ShardedSearch.DEFAULT_MAX_SHARD_SIZE,
+                    timeout: Duration = ShardedSearch.DEFAULT_TIMEOUT)
+                   (implicit executionContext: ExecutionContext): ShardedSearch[CreditCardVerification] = {
+    new ShardedSearch[CreditCardVerification](query.snapshot, range, initialShards, maxShardSize,
+      http.post("/verifications/advanced_search_ids", _), new CreditCardVerificationPager(this, _: SearchSnapshot),
+      timeout)
+  }
 }
\ No newline at end of file
@@ -3,7 +3,9 @@ package net.bhardy.braintree.scala.gw
 import net.bhardy.braintree.scala.exceptions.NotFoundException
 import net.bhardy.braintree.scala.util.Http
 import net.bhardy.braintree.scala._
-import search.CustomerSearchRequest
+import search.{CustomerSearchRequest, SearchSnapshot}
+import scala.concurrent.ExecutionContext
+import scala.concurrent.duration.Duration
 
 /**
  * Provides methods to create, delete, find, and update {@link Customer}
@@ -17,7 +19,7 @@ import search.CustomerSearchRequest
  *
  * For more detailed information on {@link Customer Customers}, see <a href="http://www.braintreepayments.com/gateway/customer-api" target="_blank">http://www.braintreepaymentsolutions.com/gateway/customer-api</a>
  */
-class CustomerGateway(http: Http, configuration: Configuration) {
+class CustomerGateway(http: Http, configuration: Configuration, vaultCache: Option[VaultCache] = None) {
   /**
    * Finds all Customers and returns a {@link ResourceCollection}.
    *
@@ -28,9 +30,8 @@ class CustomerGateway(http: Http, configuration: Configuration) {
     new ResourceCollection[Customer](Pager.customer(this, new CustomerSearchRequest), response)
   }
 
-  private[braintree] def fetchCustomers(query: CustomerSearchRequest, ids: List[String]): List[Customer] = {
-    query.ids.in(ids)
-    val response = http.post("/customers/advanced_search", query)
+  private[braintree] def fetchCustomers(query: SearchSnapshot, ids: List[String]): List[Customer] = {
+    val response = http.post("/customers/advanced_search", query.withIds(ids))
     response.findAll("customer").map{new Customer(_)}
   }
 
@@ -43,7 +44,12 @@ class CustomerGateway(http: Http, configuration: Configuration) {
    */
   def create(request: CustomerRequest) = {
     val node = http.post("/customers", request)
-    Result.customer(node)
+    val result = Result.customer(node)
+    for (cache <- vaultCache; customer <- result) {
+      cache.invalidateCustomer(customer.id)
+      customer.creditCards foreach { card => cache.invalidateCreditCard(card.token) }
+    }
+    result
   }
 
   /**
@@ -55,6 +61,7 @@ class CustomerGateway(http: Http, configuration: Configuration) {
    */
   def delete(id: String) = {
     http.delete("/customers/" + id)
+    vaultCache foreach { _.invalidateCustomer(id) }
     Result.deleted[Customer]
   }
 
@@ -68,7 +75,20 @@ class CustomerGateway(http: Http, configuration: Configuration) {
    */
   def find(id: String) = {
     if (id == null || (id.trim == "")) throw new NotFoundException
-    new Customer(http.get("/customers/" + id))
+    def fetch = new Customer(http.get("/customers/" + id))
+    vaultCache map { _.customer(id)(fetch) } getOrElse fetch
+  }
+
+  /**
+   * Finds the {@link Customer Customers} with the given ids, looking them up a page at a time
+   * with the pages requested concurrently.
+   * @param timeout how long to wait for every page; a TimeoutException is thrown after it.
+   * @return the customers found by id, and the ids not found.
+   */
+  def findAll(ids: Seq[String], timeout: Duration = MultiGet.DEFAULT_TIMEOUT)
+             (implicit executionContext: ExecutionContext): MultiGetResult[Customer] = {
+    MultiGet(ids, fetchCustomers(new CustomerSearchRequest().snapshot, _),
+      { customer: Customer => customer.id }, timeout)
   }
 
   /**
@@ -92,6 +112,7 @@ class CustomerGateway(http: Http, configuration: Configuration) {
    */
   def update(id: String, request: CustomerRequest) = {
     val node = http.put("/customers/" + id, request)
+    vaultCache foreach { _.invalidateCustomer(id) }
     Result.customer(node)
   }
 }
\ No newline at end of file
@@ -4,7 +4,10 @@ import net.bhardy.braintree.scala.exceptions.NotFoundException
 import net.bhardy.braintree.scala.util.Http
 import scala.math.BigDecimal
 import net.bhardy.braintree.scala._
-import search.SubscriptionSearchRequest
+import search.{SearchSnapshot, ShardRange, SubscriptionSearchRequest}
+import scala.concurrent.ExecutionContext
+import scala.concurrent.duration.Duration
+import java.util.Calendar
 
 /**
  * Provides methods to interact with {@link Subscription Subscriptions}.
@@ -56,6 +59,18 @@ class SubscriptionGateway(http: Http) {
     new Subscription(http.get("/subscriptions/" + id))
   }
 
+  /**
+   * Finds the {@link Subscription Subscriptions} with the given ids, looking them up a page at a time
+   * with the pages requested concurrently.
+   * @param timeout how long to wait for every page; a TimeoutException is thrown after it.
+   * @return the subscriptions found by id, and the ids not found.
+   */
+  def findAll(ids: Seq[String], timeout: Duration = MultiGet.DEFAULT_TIMEOUT)
+             (implicit executionContext: ExecutionContext): MultiGetResult[Subscription] = {
+    MultiGet(ids, fetchSubscriptions(new SubscriptionSearchRequest().snapshot, _),
+      { subscription: Subscription => subscription.id }, timeout)
+  }
+
   /**
    * Updates a {@link Subscription}.
    * @param id the id of the { @link Subscription}.
@@ -77,9 +92,36 @@ class SubscriptionGateway(http: Http) {
     new ResourceCollection[Subscription](Pager.subscription(this, searchRequest), node)
   }
 
-  private[braintree] def fetchSubscriptions(search: SubscriptionSearchRequest, ids: List[String]): List[Subscription] = {
-    search.ids.in(ids)
-    val response = http.post("/subscriptions/advanced_search", search)
+  /**
+   * A {@link ChangeSync} over the subscriptions matching searchRequest. Subscription searches
+   * can only be limited by created_at, so each poll finds new subscriptions; changes to older
+   * ones are not seen.
+   * @param since - where the first poll starts when store holds no state yet; by default the first
+   *              poll finds every subscription
+   */
+  def changeSync(searchRequest: SubscriptionSearchRequest, store: SyncStateStore,
+                 overlapSeconds: Int = ChangeSync.DEFAULT_OVERLAP_SECONDS,
+                 since: Option[Calendar] = None): ChangeSync[Subscription] = {
+    val snapshot = searchRequest.snapshot
+    new ChangeSync[Subscription](snapshot, List("created_at"), http.post("/subscriptions/advanced_search_ids", _),
+      Pager.subscription(this, snapshot), { _.id }, { _.updatedAt }, store, overlapSeconds, since)
+  }
+
+  /**
+   * Like {@link #search}, but divided on a range criterion into shards searched in parallel,
+   * with shards finding more than maxShardSize subscriptions divided again.
+   */
+  def shardedSearch(searchRequest: SubscriptionSearchRequest, range: ShardRange,
+                    initialShards: Int = ShardedSearch.DEFAULT_INITIAL_SHARDS,
+                    maxShardSize: Int = ShardedSearch.DEFAULT_MAX_SHARD_SIZE,
+                    timeout: Duration = ShardedSearch.DEFAULT_TIMEOUT)
+                   (implicit executionContext: ExecutionContext): ShardedSearch[Subscription] = {
+    new ShardedSearch[Subscription](searchRequest.snapshot, range, initialShards, maxShardSize,
+      http.post("/subscriptions/advanced_search_ids", _), Pager.subscription(this, _: SearchSnapshot), timeout)
+  }
+
+  private[braintree] def fetchSubscriptions(search: SearchSnapshot, ids: List[String]): List[Subscription] = {
+    val response = http.post("/subscriptions/advanced_search", search.withIds(ids))
     response.findAll("subscription").map{new Subscription(_)}.toList
   }
 
@@ -7,7 +7,10 @@ import net.bhardy.braintree.scala.util.TrUtil
 import scala.math.BigDecimal
 import net.bhardy.braintree.scala._
 import net.bhardy.braintree.scala.Transactions.Type
-import search.TransactionSearchRequest
+import search.{SearchSnapshot, ShardRange, TransactionSearchRequest}
+import scala.concurrent.ExecutionContext
+import scala.concurrent.duration.Duration
+import java.util.Calendar
 
 /**
  * Provides methods to interact with {@link Transaction Transactions}.
@@ -22,7 +25,7 @@ import search.TransactionSearchRequest
  *
  * For more detailed information on {@link Transaction Transactions}, see <a href="http://www.braintreepayments.com/gateway/transaction-api" target="_blank">http://www.braintreepaymentsolutions.com/gateway/transaction-api</a>
  */
-class TransactionGateway(http: Http, configuration: Configuration) {
+class TransactionGateway(http: Http, configuration: Configuration, transactionStore: Option[TransactionStore] = None) {
 
   def cloneTransaction(id: String, request: TransactionCloneRequest): Result[Transaction] = {
     val response: NodeWrapper = http.post("/transactions/" + id + "/clone", request)
@@ -65,7 +68,24 @@ class TransactionGateway(http: Http, configuration: Configuration) {
    */
   def find(id: String): Transaction = {
     if (id == null || (id.trim == "")) throw new NotFoundException
-    new Transaction(http.get("/transactions/" + id))
+    val node = transactionStore flatMap { _.find(id) } getOrElse {
+      val response = http.get("/transactions/" + id)
+      transactionStore foreach { _.remember(response) }
+      response
+    }
+    new Transaction(node)
+  }
+
+  /**
+   * Finds the {@link Transaction Transactions} with the given ids, looking them up a page at a time
+   * with the pages requested concurrently.
+   * @param timeout how long to wait for every page; a TimeoutException is thrown after it.
+   * @return the transactions found by id, and the ids not found.
+   */
+  def findAll(ids: Seq[String], timeout: Duration = MultiGet.DEFAULT_TIMEOUT)
+             (implicit executionContext: ExecutionContext): MultiGetResult[Transaction] = {
+    MultiGet(ids, fetchTransactions(new TransactionSearchRequest().snapshot, _),
+      { transaction: Transaction => transaction.id }, timeout)
   }
 
   /**
@@ -75,12 +95,14 @@ class TransactionGateway(http: Http, configuration: Configuration) {
    */
   def refund(id: String): Result[Transaction] = {
     val response: NodeWrapper = http.post("/transactions/" + id + "/refund")
+    forget(id)
     Result.transaction(response)
   }
 
   def refund(id: String, amount: BigDecimal): Result[Transaction] = {
     val request: TransactionRequest = new TransactionRequest().amount(amount)
     val response: NodeWrapper = http.post("/transactions/" + id + "/refund", request)
+    forget(id)
     Result.transaction(response)
   }
 
@@ -114,10 +136,71 @@ class TransactionGateway(http: Http, configuration: Configuration) {
     new ResourceCollection[Transaction](Pager.transaction(this, query), node)
   }
 
-  private[braintree] def fetchTransactions(query: TransactionSearchRequest, ids: List[String]): List[Transaction] = {
-    query.ids.in(ids)
-    val response: NodeWrapper = http.post("/transactions/advanced_search", query)
-    response.findAll("transaction").map(new Transaction(_)).toList
+  /**
+   * Like {@link #search}, but divided on a range criterion into shards searched in parallel,
+   * with shards finding more than maxShardSize transactions divided again.
+   * @return a {@link ShardedSearch}.
+   */
+  def shardedSearch(query: TransactionSearchRequest, range: ShardRange,
+                    initialShards: Int = ShardedSearch.DEFAULT_INITIAL_SHARDS,
+                    maxShardSize: Int = ShardedSearch.DEFAULT_MAX_SHARD_SIZE,
+                    timeout: Duration = ShardedSearch.DEFAULT_TIMEOUT)
+                   (implicit executionContext: ExecutionContext): ShardedSearch[Transaction] = {
+    new ShardedSearch[Transaction](query.snapshot, range, initialShards, maxShardSize,
+      http.post("/transactions/advanced_search_ids", _), Pager.transaction(this, _: SearchSnapshot), timeout)
+  }
+
+  /**
+   * A {@link ChangeSync} over the transactions matching query. Transaction searches have no
+   * updated_at criterion, so changes are found through the date each status is reached.
+   * @param since - where the first poll starts when store holds no state yet; by default the first
+   *              poll finds every transaction
+   */
+  def changeSync(query: TransactionSearchRequest, store: SyncStateStore,
+                 overlapSeconds: Int = ChangeSync.DEFAULT_OVERLAP_SECONDS,
+                 since: Option[Calendar] = None): ChangeSync[Transaction] = {
+    val changeDates = List("created_at", "authorized_at", "submitted_for_settlement_at", "settled_at", "voided_at",
+      "failed_at", "gateway_rejected_at", "processor_declined_at", "authorization_expired_at")
+    val snapshot = query.snapshot
+    new ChangeSync[Transaction](snapshot, changeDates, http.post("/transactions/advanced_search_ids", _),
+      Pager.transaction(this, snapshot), { _.id }, { _.updatedAt }, store, overlapSeconds, since)
+  }
+
+  /**
+   * Like {@link #search}, but resumable: the ids found and the pages handled are kept in the
+   * checkpoint file, and a search started again with the same file carries on from there.
+   * @return a {@link CheckpointedSearch}.
+   */
+  def checkpointedSearch(query: TransactionSearchRequest, checkpoint: java.io.File): CheckpointedSearch[Transaction] = {
+    new CheckpointedSearch[Transaction](Pager.transaction(this, query), checkpoint, query.toXml.get.toString,
+      http.post("/transactions/advanced_search_ids", query))
+  }
+
+  private[braintree] def fetchTransactions(query: SearchSnapshot, ids: List[String]): List[Transaction] = {
+    transactionStore match {
+      case None => {
+        val response: NodeWrapper = http.post("/transactions/advanced_search", query.withIds(ids))
+        response.findAll("transaction").map(new Transaction(_)).toList
+      }
+      case Some(store) => {
+        // stored transactions are final, so still match the criteria that found their ids
+        val stored = ids.flatMap { id => store.find(id).map { id -> _ } }.toMap
+        val missing = ids.filterNot(stored.contains)
+        val fetched = if (missing.isEmpty) Nil else {
+          http.post("/transactions/advanced_search", query.withIds(missing)).findAll("transaction")
+        }
+        fetched foreach store.remember
+        val fetchedById = fetched.flatMap { node => node("id").map { _ -> node } }.toMap
+        ids.flatMap { id => stored.get(id) orElse fetchedById.get(id) }.map(new Transaction(_))
+      }
+    }
+  }
+
+  /**
+   * Drops the stored copy of a transaction about to be changed.
+   */
+  private def forget(id: String) {
+    transactionStore foreach { _.remove(id) }
   }
 
   /**
@@ -128,6 +211,7 @@ class TransactionGateway(http: Http, configuration: Configuration) {
   def cancelRelease(id: String): Result[Transaction] = {
     val request: TransactionRequest = new TransactionRequest
     val response: NodeWrapper = http.put("/transactions/" + id + "/cancel_release", request)
+    forget(id)
     Result.transaction(response)
   }
 
@@ -139,6 +223,7 @@ class TransactionGateway(http: Http, configuration: Configuration) {
   def holdInEscrow(id: String): Result[Transaction] = {
     val request: TransactionRequest = new TransactionRequest
     val response: NodeWrapper = http.put("/transactions/" + id + "/hold_in_escrow", request)
+    forget(id)
     Result.transaction(response)
   }
 
@@ -150,6 +235,7 @@ class TransactionGateway(http: Http, configuration: Configuration) {
   def releaseFromEscrow(id: String): Result[Transaction] = {
     val request: TransactionRequest = new TransactionRequest
     val response: NodeWrapper = http.put("/transactions/" + id + "/release_from_escrow", request)
+    forget(id)
     Result.transaction(response)
   }
 
@@ -171,6 +257,7 @@ class TransactionGateway(http: Http, configuration: Configuration) {
   def submitForSettlement(id: String, amount: BigDecimal): Result[Transaction] = {
     val request: TransactionRequest = new TransactionRequest().amount(amount)
     val response: NodeWrapper = http.put("/transactions/" + id + "/submit_for_settlement", request)
+    forget(id)
     Result.transaction(response)
   }
 
@@ -188,6 +275,7 @@ class TransactionGateway(http: Http, configuration: Configuration) {
    */
   def voidTransaction(id: String): Result[Transaction] = {
     val response: NodeWrapper = http.put("/transactions/" + id + "/void")
+    forget(id)
     Result.transaction(response)
   }
 }
\ No newline at end of file
@@ -4,15 +4,17 @@ import net.bhardy.braintree.scala.exceptions.InvalidSignatureException
 import net.bhardy.braintree.scala.org.apache.commons.codec.binary.Base64
 import net.bhardy.braintree.scala.util.Crypto
 import net.bhardy.braintree.scala.util.NodeWrapperFactory
-import net.bhardy.braintree.scala.WebhookNotification
+import net.bhardy.braintree.scala.{VaultCache, WebhookNotification}
 
-class WebhookNotificationGateway(configuration: Configuration) {
+class WebhookNotificationGateway(configuration: Configuration, vaultCache: Option[VaultCache] = None) {
 
   def parse(signature: String, payload: String): WebhookNotification = {
     validateSignature(signature, payload)
     val xmlPayload = new String(Base64.decodeBase64(payload))
     val node = NodeWrapperFactory.create(xmlPayload)
-    new WebhookNotification(node)
+    val notification = new WebhookNotification(node)
+    vaultCache foreach { _.onWebhook(notification) }
+    notification
   }
 
   private def validateSignature(signature: String, payload: String) {
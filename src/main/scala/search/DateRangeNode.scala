@@ -20,4 +20,12 @@ class DateRangeNode[P <: SearchRequest[P]](nodeName: String, parent: P) extends
     parent.addRangeCriteria(nodeName, new SearchCriteria("max", max))
     parent
   }
-}
\ No newline at end of file
+
+  /**
+   * This field from min to max, for dividing a search into parts with
+   * {@link ShardRange#divide}. Use a step of ShardRange.DAY for fields compared by date only.
+   */
+  def shardRange(min: Calendar, max: Calendar, step: Long = ShardRange.SECOND): ShardRange = {
+    ShardRange.dates(nodeName, min, max, step)
+  }
+}
@@ -52,4 +52,15 @@ class RangeNode[T <: SearchRequest[T]](nodeName: String, parent: T) extends Sear
   def is(value: String): T = {
     assembleCriteria("is", value)
   }
-}
\ No newline at end of file
+
+  /**
+   * This field from min to max, for dividing a search into parts with {@link ShardRange#divide}.
+   */
+  def shardRange(min: BigDecimal, max: BigDecimal): ShardRange = {
+    ShardRange.numbers(nodeName, min, max)
+  }
+
+  def shardRange(min: Int, max: Int): ShardRange = {
+    shardRange(BigDecimal(min), BigDecimal(max))
+  }
+}
@@ -1,7 +1,7 @@
 package net.bhardy.braintree.scala.search
 
 import net.bhardy.braintree.scala.Request
-import net.bhardy.braintree.scala.util.XmlUtil._
+import net.bhardy.braintree.scala.util.XmlWriter
 
 import collection.mutable.{Map => MMap}
 import collection.mutable.{HashMap, ListBuffer}
@@ -47,42 +47,36 @@ abstract class SearchRequest[R <: SearchRequest[R]] extends Request {
 
   override def toQueryString = ???  // not used here
 
-  override def toXml: Option[Elem] = {
-    val children = (criteriaAsXml ++ rangeCriteriaAsXml ++
-        multiValueCriteriaAsXml ++ keyValueCriteriaAsXml).toSeq
-
-    val elem = tag("search").content(children)
-    Some(elem)
+  /**
+   * An immutable copy of the criteria added so far, e.g. for fetching result pages
+   * with {@link SearchSnapshot#withIds} while this request is left as it is.
+   */
+  def snapshot: SearchSnapshot = {
+    new SearchSnapshot(criteria.result.toList, rangeCriteria.toList.map { case (key, items) => (key, items.toList) },
+      multiValueCriteria.result.toList, keyValueCriteria.result.toList)
   }
 
-  def criteriaAsXml = {
-    for {
-      (key, value) <- criteria.result
-      xml <- value.toXml
-    } yield tag(key).content(xml)
-  }
+  /**
+   * A snapshot of this search limited to the given ids. Unlike <code>ids.in(ids)</code> it
+   * does not change this request.
+   */
+  def withIds(ids: List[String]): SearchSnapshot = snapshot.withIds(ids)
 
-  def keyValueCriteriaAsXml = {
-    for {
-      (key, value) <- keyValueCriteria.result
-    } yield tag(key).content(value)
-  }
+  override def toXml: Option[Elem] = snapshot.toXml
 
-  def rangeCriteriaAsXml = {
-    for {
-      (key, criteria) <- rangeCriteria.result
-    } yield tag(key).content(criteriaXml(criteria.toList))
+  override def writeXml(writer: XmlWriter) {
+    snapshot.writeXml(writer)
   }
 
+  def criteriaAsXml = snapshot.criteriaAsXml
+
+  def keyValueCriteriaAsXml = snapshot.keyValueCriteriaAsXml
+
+  def rangeCriteriaAsXml = snapshot.rangeCriteriaAsXml
+
   def criteriaXml(criteria:List[SearchCriteria]) = criteria flatMap (_.toXml)
 
-  def multiValueCriteriaAsXml = {
-    for {
-      (key, value) <- multiValueCriteria.result
-    } yield {
-      tag(key).withType("array").content(value.toXml.get \ "item")
-    }
-  }
+  def multiValueCriteriaAsXml = snapshot.multiValueCriteriaAsXml
 
   protected def textNode(nodeName: String) = new TextNode[R](nodeName, getThis)
 
@@ -0,0 +1,107 @@
+package net.bhardy.braintree.scala.search
+
+import net.bhardy.braintree.scala.Request
+import net.bhardy.braintree.scala.util.XmlUtil._
+import net.bhardy.braintree.scala.util.XmlWriter
+
+import xml.Elem
+
+/**
+ * An immutable copy of a {@link SearchRequest}'s criteria. Search results are fetched a page
+ * at a time by posting the query again with that page's ids; doing so through a snapshot
+ * leaves the original query alone, so pages can be fetched from several threads at once.
+ *
+ * <pre>
+ * val snapshot = query.snapshot
+ * http.post("/transactions/advanced_search", snapshot.withIds(pageIds))
+ * </pre>
+ *
+ * Criteria keep the order they had in the request they were copied from.
+ */
+final class SearchSnapshot private[search](
+    val criteria: List[(String, SearchCriteria)],
+    val rangeCriteria: List[(String, List[SearchCriteria])],
+    val multiValueCriteria: List[(String, SearchCriteria)],
+    val keyValueCriteria: List[(String, String)]) extends Request {
+
+  /**
+   * This search limited to the given ids, replacing any ids criteria already present.
+   */
+  def withIds(ids: List[String]): SearchSnapshot = {
+    val idsCriteria = "ids" -> new SearchCriteria("ids", ids)
+    val replaced = multiValueCriteria.map {
+      case ("ids", _) => idsCriteria
+      case other => other
+    }
+    val multiValue = if (multiValueCriteria.exists { _._1 == "ids" }) replaced else replaced :+ idsCriteria
+    new SearchSnapshot(criteria, rangeCriteria, multiValue, keyValueCriteria)
+  }
+
+  /**
+   * This search limited to the given range, replacing any other criteria on its field.
+   */
+  def withRange(range: ShardRange): SearchSnapshot = {
+    new SearchSnapshot(criteria.filter { _._1 != range.nodeName },
+      rangeCriteria.filter { _._1 != range.nodeName } :+ (range.nodeName -> range.criteria),
+      multiValueCriteria, keyValueCriteria)
+  }
+
+  override def toQueryString(parent: String) = ??? // not used here
+
+  override def toQueryString = ???  // not used here
+
+  override def toXml: Option[Elem] = {
+    val children = criteriaAsXml ++ rangeCriteriaAsXml ++ multiValueCriteriaAsXml ++ keyValueCriteriaAsXml
+    Some(tag("search").content(children))
+  }
+
+  override def writeXml(writer: XmlWriter) {
+    writer.start("search")
+    for ((key, value) <- criteria) {
+      writer.start(key)
+      value.toXml.foreach { writer.write }
+      writer.end(key)
+    }
+    for ((key, values) <- rangeCriteria) {
+      writer.start(key)
+      values.foreach { _.toXml.foreach { writer.write } }
+      writer.end(key)
+    }
+    for ((key, value) <- multiValueCriteria) {
+      writer.start(key, Some("array"))
+      (value.toXml.get \ "item").foreach { writer.write }
+      writer.end(key)
+    }
+    for ((key, value) <- keyValueCriteria) {
+      writer.element(key, value)
+    }
+    writer.end("search")
+  }
+
+  def criteriaAsXml = {
+    for {
+      (key, value) <- criteria
+      xml <- value.toXml
+    } yield tag(key).content(xml)
+  }
+
+  def keyValueCriteriaAsXml = {
+    for {
+      (key, value) <- keyValueCriteria
+    } yield tag(key).content(value)
+  }
+
+  def rangeCriteriaAsXml = {
+    for {
+      (key, values) <- rangeCriteria
+    } yield tag(key).content(values flatMap (_.toXml))
+  }
+
+  def multiValueCriteriaAsXml = {
+    for {
+      (key, value) <- multiValueCriteria
+    } yield {
+      tag(key).withType("array").content(value.toXml.get \ "item")
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package net.bhardy.braintree.scala.search
+
+import java.util.{Calendar, TimeZone}
+import scala.math.BigDecimal
+
+/**
+ * The span of a range criterion a search is divided on, counted in whole steps: seconds or
+ * days for dates, the smallest unit of the bounds' scale for numbers. Dividing it gives
+ * ranges that do not overlap, so each result falls in exactly one part.
+ *
+ * <pre>
+ * query.createdAt.shardRange(startOfMonth, endOfMonth)
+ * query.amount.shardRange(BigDecimal("0.00"), BigDecimal("5000.00"))
+ * </pre>
+ */
+final class ShardRange private(val nodeName: String, val min: Long, val max: Long, value: Long => AnyRef) {
+  require(min <= max, "min must not be after max")
+
+  /**
+   * Number of steps in the range, bounds included.
+   */
+  def steps: BigInt = BigInt(max) - min + 1
+
+  /**
+   * Divides the range into parts of as near equal size as possible, fewer if there are not
+   * that many steps.
+   */
+  def divide(parts: Int): List[ShardRange] = {
+    require(parts > 0, "parts must be positive")
+    val count = (steps min parts).toInt
+    (0 until count).toList.map { part =>
+      new ShardRange(nodeName, (BigInt(min) + steps * part / count).toLong,
+        (BigInt(min) + steps * (part + 1) / count - 1).toLong, value)
+    }
+  }
+
+  def isDivisible: Boolean = min < max
+
+  private[search] def criteria: List[SearchCriteria] = {
+    List(new SearchCriteria("min", value(min)), new SearchCriteria("max", value(max)))
+  }
+
+  override def toString = nodeName + "[" + value(min) + ", " + value(max) + "]"
+}
+
+object ShardRange {
+
+  final val SECOND: Long = 1
+
+  final val DAY: Long = 24 * 60 * 60
+
+  /**
+   * Dates from min to max, both included. Use a step of DAY for fields the gateway
+   * compares by date only, such as next_billing_date.
+   */
+  def dates(nodeName: String, min: Calendar, max: Calendar, step: Long = SECOND): ShardRange = {
+    require(step > 0, "step must be positive")
+    val first = min.getTimeInMillis / 1000 / step
+    val last = max.getTimeInMillis / 1000 / step
+    new ShardRange(nodeName, first, last, { units =>
+      val calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"))
+      calendar.setTimeInMillis(units * step * 1000)
+      calendar
+    })
+  }
+
+  /**
+   * Numbers from min to max, both included, in steps of the finer of their two scales.
+   */
+  def numbers(nodeName: String, min: BigDecimal, max: BigDecimal): ShardRange = {
+    val scale = math.max(0, math.max(min.scale, max.scale))
+    new ShardRange(nodeName, min.bigDecimal.movePointRight(scale).longValueExact,
+      max.bigDecimal.movePointRight(scale).longValueExact, { units =>
+        java.math.BigDecimal.valueOf(units, scale).toPlainString
+      })
+  }
+}
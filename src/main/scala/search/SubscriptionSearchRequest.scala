@@ -8,6 +8,8 @@ import net.bhardy.braintree.scala.Subscriptions
  */
 class SubscriptionSearchRequest extends SearchRequest[SubscriptionSearchRequest] {
 
+  def createdAt = dateRangeNode("created_at")
+
   def daysPastDue = rangeNode("days_past_due")
 
   def id = textNode("id")
@@ -0,0 +1,117 @@
+package net.bhardy.braintree.scala.streams
+
+import net.bhardy.braintree.scala.Pager
+import _root_.org.reactivestreams.{Publisher, Subscriber, Subscription}
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import scala.concurrent.ExecutionContext
+import scala.util.control.NonFatal
+
+/**
+ * Publishes search results a page at a time, as an org.reactivestreams Publisher. A page
+ * is fetched only when the subscriber has demand and has been given everything from the
+ * page before, so no more than one page is held per subscriber however slowly it consumes.
+ *
+ * Each subscriber gets its own pass over the ids. Pages are fetched and signals delivered
+ * on the execution context, never on the thread calling subscribe or request.
+ *
+ * @param ids - the ids found by the search, in the order they are published
+ */
+class PagePublisher[T](pager: Pager[T], ids: IndexedSeq[String], pageSize: Int)
+                      (implicit executionContext: ExecutionContext) extends Publisher[T] {
+
+  def subscribe(subscriber: Subscriber[_ >: T]) {
+    if (subscriber == null) throw new NullPointerException("subscriber is null")
+    new PageSubscription(subscriber).schedule()
+  }
+
+  /**
+   * Signals are only sent from drain, and drain only runs in one task at a time: whoever
+   * raises pending from zero submits the task, which keeps draining until it has seen
+   * every reason it was scheduled.
+   */
+  private class PageSubscription(subscriber: Subscriber[_ >: T]) extends Subscription with Runnable {
+
+    private val pending = new AtomicInteger
+    private val demand = new AtomicLong
+    @volatile private var cancelled = false
+    @volatile private var invalidRequest: Option[Long] = None
+
+    private val pages = ids.grouped(pageSize)
+    private var items: List[T] = Nil
+    private var started = false
+
+    def request(n: Long) {
+      if (n <= 0) {
+        invalidRequest = Some(n)
+      } else {
+        var current = demand.get
+        while (current != Long.MaxValue && !demand.compareAndSet(current, math.min(Long.MaxValue - n, current) + n)) {
+          current = demand.get
+        }
+      }
+      schedule()
+    }
+
+    def cancel() {
+      cancelled = true
+    }
+
+    def schedule() {
+      if (pending.getAndIncrement == 0) {
+        executionContext.execute(this)
+      }
+    }
+
+    def run() {
+      var missed = 1
+      while (missed != 0) {
+        drain()
+        missed = pending.addAndGet(-missed)
+      }
+    }
+
+    private def drain() {
+      if (!started) {
+        started = true
+        subscriber.onSubscribe(this)
+      }
+      while (!cancelled) {
+        if (invalidRequest.isDefined) {
+          fail(new IllegalArgumentException("request must be positive, was " + invalidRequest.get))
+          return
+        }
+        if (items.isEmpty) {
+          if (!pages.hasNext) {
+            cancelled = true
+            subscriber.onComplete()
+            return
+          }
+          if (demand.get == 0) return
+          try {
+            items = pager.getPage(pages.next.toList)
+          }
+          catch {
+            case NonFatal(e) => {
+              fail(e)
+              return
+            }
+          }
+        } else if (demand.get == 0) {
+          return
+        } else {
+          val item = items.head
+          items = items.tail
+          if (demand.get != Long.MaxValue) demand.decrementAndGet
+          subscriber.onNext(item)
+        }
+      }
+      items = Nil
+    }
+
+    private def fail(error: Throwable) {
+      cancelled = true
+      items = Nil
+      subscriber.onError(error)
+    }
+  }
+}
@@ -0,0 +1,358 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import java.io.StringReader
+import java.util.concurrent.atomic.AtomicLong
+import javax.xml.stream.XMLStreamConstants._
+import javax.xml.stream.XMLStreamException
+import javax.xml.stream.XMLStreamReader
+import collection.mutable.ArrayStack
+import collection.mutable.HashMap
+import collection.mutable.ListBuffer
+
+/**
+ * The element paths a domain class reads from its response node, e.g. the paths
+ * <code>new Transaction(node)</code> passes to findString, findFirst and findAll.
+ * A {@link BindingNodeWrapperFactory} uses it to keep just those values while the response
+ * is parsed, in one pass and without building a tree. A path the binding lacks is still
+ * answered, by parsing the response again; see {@link BoundNodeWrapper}.
+ *
+ * <pre>
+ * lazy val address = Binding("id", "first-name", "postal-code")
+ * lazy val customer: Binding = Binding("id", "first-name").repeat("addresses/address", address)
+ * </pre>
+ */
+final class Binding private(val fields: Set[String], repeated: () => Map[String, Binding]) {
+
+  /**
+   * Repeated elements, read with findAll, by path. A path may end in "*" for elements of
+   * any name, as with custom fields.
+   */
+  lazy val groups: Map[String, Binding] = repeated()
+
+  /**
+   * Adds a child element read with findFirst/findFirstOpt, along with everything it reads.
+   */
+  def nest(path: String, binding: Binding): Binding = {
+    new Binding(fields ++ Binding.withAncestors(path :: binding.fields.toList.map { path + "/" + _ }), { () =>
+      groups ++ binding.groups.map { case (groupPath, groupBinding) => (path + "/" + groupPath, groupBinding) }
+    })
+  }
+
+  /**
+   * Adds elements read with findAll. Bindings refer to each other through repeated elements
+   * (a subscription's transactions, a transaction's subscription), so the binding is taken by name.
+   */
+  def repeat(path: String, binding: => Binding): Binding = {
+    val containers = path.lastIndexOf('/') match {
+      case -1 => Nil
+      case at => List(path.substring(0, at))
+    }
+    new Binding(fields ++ Binding.withAncestors(containers), { () => groups + (path -> binding) })
+  }
+
+  /**
+   * Adds elements read with findAll for their text only, e.g. "refund-ids/item", or custom fields
+   * through a wildcard path.
+   */
+  def repeatText(path: String): Binding = repeat(path, Binding())
+
+  /**
+   * Whether the path, relative to the bound element, is kept: a field, a container of one, or repeated.
+   */
+  private[util] def binds(path: String): Boolean = path.isEmpty || fields.contains(path) || groupFor(path).isDefined
+
+  private[util] def groupFor(path: String): Option[(String, Binding)] = {
+    groups.get(path).map { (path, _) } orElse {
+      val wildcard = path.lastIndexOf('/') match {
+        case -1 => "*"
+        case at => path.substring(0, at) + "/*"
+      }
+      groups.get(wildcard).map { (wildcard, _) }
+    }
+  }
+}
+
+object Binding {
+
+  def apply(fields: String*): Binding = new Binding(withAncestors(fields.toList), { () => Map.empty })
+
+  private def withAncestors(paths: List[String]): Set[String] = {
+    paths.flatMap { path =>
+      path.split("/").scanLeft("") { (prefix, step) => if (prefix.isEmpty) step else prefix + "/" + step }.tail
+    }.toSet
+  }
+
+  /**
+   * Reads the element the reader is positioned on, keeping the values the binding names.
+   *
+   * @param unboundReads - counts lookups at paths the binding does not keep
+   * @param document - parses the whole response, to answer those lookups
+   */
+  private[util] def decode(reader: XMLStreamReader, binding: Binding, unboundReads: AtomicLong,
+                           document: () => SimpleNodeWrapper): BoundRecord = {
+    val root = new BoundRecord(reader.getLocalName, binding, unboundReads, document)
+    val open = new ArrayStack[Frame]
+    open.push(new Frame(root, binding, "", isNil(reader)))
+    var skipping = 0
+
+    while (!open.isEmpty && reader.hasNext) {
+      reader.next match {
+        case START_ELEMENT => {
+          if (skipping > 0) {
+            skipping += 1
+          } else {
+            val parent = open.top
+            val name = reader.getLocalName
+            val path = if (parent.path.isEmpty) name else parent.path + "/" + name
+            parent.binding.groupFor(path) match {
+              case Some((groupPath, groupBinding)) => {
+                val record = parent.record.add(groupPath, name, groupBinding)
+                open.push(new Frame(record, groupBinding, "", isNil(reader)))
+              }
+              case None if parent.binding.fields.contains(path) => {
+                open.push(new Frame(parent.record, parent.binding, path, isNil(reader)))
+              }
+              case None => skipping = 1
+            }
+          }
+        }
+        case CHARACTERS | CDATA => {
+          if (skipping == 0 && !reader.isWhiteSpace) {
+            open.top.text.append(reader.getText)
+          }
+        }
+        case END_ELEMENT => {
+          if (skipping > 0) {
+            skipping -= 1
+          } else {
+            val frame = open.pop
+            frame.record.values(frame.path) = if (frame.nil) null else frame.text.toString.trim
+          }
+        }
+        case _ =>
+      }
+    }
+    root
+  }
+
+  private def isNil(reader: XMLStreamReader) = "true" == reader.getAttributeValue(null, "nil")
+
+  private class Frame(val record: BoundRecord, val binding: Binding, val path: String, val nil: Boolean) {
+    val text = new StringBuilder
+  }
+}
+
+/**
+ * Values kept for one bound element: text by path relative to the element ("" for its own
+ * text, null when nil), and the records of its repeated elements by binding path.
+ *
+ * @param unboundReads - counts lookups at paths the binding does not keep
+ * @param locate - finds this element in the whole response, parsed into a tree
+ */
+private[util] final class BoundRecord(val name: String, val binding: Binding, val unboundReads: AtomicLong,
+                                      locate: () => SimpleNodeWrapper) {
+  val values = new HashMap[String, String]
+  val groups = new HashMap[String, ListBuffer[BoundRecord]]
+
+  /**
+   * This element with everything the binding dropped, parsed on first use.
+   */
+  lazy val tree: SimpleNodeWrapper = locate()
+
+  def add(groupPath: String, name: String, binding: Binding): BoundRecord = {
+    val records = groups.getOrElseUpdate(groupPath, new ListBuffer[BoundRecord])
+    val index = records.size
+    val record = new BoundRecord(name, binding, unboundReads, { () =>
+      tree.findAll(groupPath)(index).asInstanceOf[SimpleNodeWrapper]
+    })
+    records += record
+    record
+  }
+}
+
+/**
+ * Answers the paths of a {@link Binding} from a {@link BoundRecord}. A path the binding names
+ * but the response lacks is absent, as in a tree. A path the binding does not name was dropped
+ * while parsing, so it is answered from the response parsed again into a tree, and counted
+ * in {@link BindingNodeWrapperFactory#unboundReads}: the binding has fallen behind the class
+ * reading it and needs the path added.
+ */
+final class BoundNodeWrapper private[util](record: BoundRecord, prefix: String) extends NodeWrapper {
+
+  private def key(expression: String): Option[String] = {
+    val path = if (expression.indexOf('.') < 0) expression else PathExpression.steps(expression).mkString("/")
+    val key = if (path.isEmpty) prefix.stripSuffix("/") else prefix + path
+    if (record.binding.binds(key)) Some(key) else None
+  }
+
+  private def unbound: NodeWrapper = {
+    record.unboundReads.incrementAndGet
+    if (prefix.isEmpty) record.tree else record.tree.findFirst(prefix.stripSuffix("/"))
+  }
+
+  def findAll(expression: String): List[NodeWrapper] = key(expression) match {
+    case Some(path) => record.groups.get(path) match {
+      case Some(records) => records.toList.map { new BoundNodeWrapper(_, "") }
+      case None => if (record.values.contains(path)) List(child(path)) else Nil
+    }
+    case None => unbound.findAll(expression)
+  }
+
+  @deprecated("null-based; use findFirstOpt", "0.1")
+  def findFirst(expression: String): NodeWrapper = findFirstOpt(expression).getOrElse(null)
+
+  def findFirstOpt(expression: String): Option[NodeWrapper] = key(expression) match {
+    case Some(path) if record.values.contains(path) => Some(child(path))
+    case Some(path) => record.groups.get(path).flatMap { _.headOption }.map { new BoundNodeWrapper(_, "") }
+    case None => unbound.findFirstOpt(expression)
+  }
+
+  private def child(path: String) = if (path.isEmpty) this else new BoundNodeWrapper(record, path + "/")
+
+  @deprecated("null-based; use findStringOpt", "0.1")
+  def findString(expression: String): String = findStringOpt(expression).getOrElse(null)
+
+  def findStringOpt(expression: String): Option[String] = key(expression) match {
+    case Some(path) => record.values.get(path).flatMap { Option(_) }
+    case None => unbound.findStringOpt(expression)
+  }
+
+  def getElementName = {
+    if (prefix.isEmpty) record.name else prefix.stripSuffix("/").split("/").last
+  }
+
+  /**
+   * The leaf values under this element, named as {@link SimpleNodeWrapper#getFormParameters}
+   * names them, e.g. "billing[postal_code]".
+   */
+  def getFormParameters: Map[String, String] = {
+    BoundNodeWrapper.leaves(record, prefix).map { case (steps, value) =>
+      val names = steps.map(StringUtils.underscore)
+      names.head + names.tail.map { "[" + _ + "]" }.mkString -> value
+    }.toMap
+  }
+
+  /**
+   * Builds a {@link SimpleNodeWrapper} tree of the values kept for this element, answering
+   * the binding's paths as this node does. What the binding dropped is not in it.
+   */
+  def materialize: SimpleNodeWrapper = {
+    val tree = BoundNodeWrapper.tree(record)
+    if (prefix.isEmpty) tree else tree.findFirst(prefix.stripSuffix("/")).asInstanceOf[SimpleNodeWrapper]
+  }
+}
+
+private object BoundNodeWrapper {
+
+  private class TreeBuilder(name: String) {
+    var nil = false
+    var text = ""
+    val children = new collection.mutable.LinkedHashMap[String, TreeBuilder]
+    val repeated = new ListBuffer[SimpleNodeWrapper]
+
+    def at(steps: Seq[String]): TreeBuilder = {
+      steps.foldLeft(this) { (parent, step) => parent.children.getOrElseUpdate(step, new TreeBuilder(step)) }
+    }
+
+    def build: SimpleNodeWrapper = {
+      val content = (if (text.isEmpty) Nil else List(TextNode(text))) ++ children.values.map { _.build } ++ repeated
+      SimpleNodeWrapper(name, if (nil) Map("nil" -> "true") else Map.empty, content)
+    }
+  }
+
+  def tree(record: BoundRecord): SimpleNodeWrapper = {
+    val root = new TreeBuilder(record.name)
+    def steps(path: String) = if (path.isEmpty) Nil else path.split("/").toList
+    for ((path, value) <- record.values) {
+      val element = root.at(steps(path))
+      if (value == null) element.nil = true else element.text = value
+    }
+    for ((groupPath, records) <- record.groups; child <- records) {
+      root.at(steps(groupPath).init).repeated += tree(child)
+    }
+    root.build
+  }
+
+  /**
+   * The leaf values under prefix of the record, each with the steps of its path from there.
+   * Repeated elements appear under their own element name, as they do in the response.
+   */
+  def leaves(record: BoundRecord, prefix: String): List[(List[String], String)] = {
+    def below(path: String) = path.length > prefix.length && path.startsWith(prefix)
+    def hasChildren(path: String) = {
+      record.values.keys.exists { _.startsWith(path + "/") } || record.groups.keys.exists { _.startsWith(path + "/") }
+    }
+    val fields = for {
+      (path, value) <- record.values.toList if below(path) && !hasChildren(path)
+    } yield (path.substring(prefix.length).split("/").toList, value)
+    val repeated = for {
+      (groupPath, records) <- record.groups.toList if below(groupPath)
+      container = groupPath.substring(prefix.length).split("/").toList.init
+      child <- records.toList
+      (steps, value) <- {
+        val nested = leaves(child, "")
+        if (nested.isEmpty) List((Nil, child.values.getOrElse("", ""))) else nested
+      }
+    } yield (container ::: child.name :: steps, value)
+    fields ++ repeated
+  }
+}
+
+/**
+ * Decodes responses whose root element has a {@link Binding} straight into
+ * {@link BoundNodeWrapper}s, and any other response (errors, search ids, plans...)
+ * into a {@link SimpleNodeWrapper} tree as usual.
+ *
+ * The undecoded response is kept with a bound node, as bytes rather than a tree, so that a
+ * path its binding lacks can still be answered.
+ *
+ * @param roots - bindings by root element name
+ */
+class BindingNodeWrapperFactory(roots: Map[String, Binding]) extends NodeWrapperFactory {
+
+  private val unboundReadCount = new AtomicLong
+
+  /**
+   * Lookups of bound responses at a path their binding lacks, answered by parsing the response
+   * again into a tree. Anything above zero means a binding is behind the class reading it.
+   */
+  def unboundReads: Long = unboundReadCount.get
+
+  def create(xml: String): NodeWrapper = {
+    create(StaxParser.newReader(new StringReader(xml)), { () => SimpleNodeWrapper.parse(xml) })
+  }
+
+  def create(stream: InputStream): NodeWrapper = {
+    val bytes = new ByteArrayOutputStream
+    val buffer = new Array[Byte](8192)
+    var read = stream.read(buffer)
+    while (read >= 0) {
+      bytes.write(buffer, 0, read)
+      read = stream.read(buffer)
+    }
+    val response = bytes.toByteArray
+    create(StaxParser.newReader(new ByteArrayInputStream(response)), { () =>
+      StaxParser.parse(new ByteArrayInputStream(response))
+    })
+  }
+
+  private def create(reader: XMLStreamReader, document: () => SimpleNodeWrapper): NodeWrapper = {
+    roots.get(StaxParser.toRoot(reader).getLocalName) match {
+      case Some(binding) => {
+        try {
+          new BoundNodeWrapper(Binding.decode(reader, binding, unboundReadCount, document), "")
+        }
+        catch {
+          case e: XMLStreamException => throw new IllegalArgumentException(e.getMessage, e)
+        }
+        finally {
+          reader.close()
+        }
+      }
+      case None => StaxParser.parse(reader)
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package net.bhardy.braintree.scala.util
+
+import net.bhardy.braintree.scala.exceptions.UnexpectedException
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Tuning for the keep-alive connections an {@link Http} instance holds open to the gateway.
+ *
+ * @param maxConnectionsPerRoute - most connections that may be open to the gateway host at once.
+ *                               Callers beyond this wait for a connection to be handed back.
+ *                               Above 5, see { @link ConnectionPool#widenKeepAliveCache}.
+ * @param acquireTimeoutMillis - how long a caller waits for a free connection before giving up.
+ * @param connectTimeoutMillis - TCP connect timeout, 0 for none.
+ * @param readTimeoutMillis - socket read timeout, 0 for none.
+ */
+case class ConnectionPoolSettings(
+                                   maxConnectionsPerRoute: Int = 20,
+                                   acquireTimeoutMillis: Long = 60000,
+                                   connectTimeoutMillis: Int = 10000,
+                                   readTimeoutMillis: Int = 60000
+                                   ) {
+  require(maxConnectionsPerRoute > 0, "maxConnectionsPerRoute must be positive")
+}
+
+/**
+ * Point in time snapshot of pool utilization.
+ *
+ * @param maxConnections - configured connection limit for the route
+ * @param leased - connections currently carrying a request
+ * @param peakLeased - highest number of connections ever leased at once
+ * @param pending - callers currently waiting for a connection
+ * @param totalLeases - requests served since the pool was created
+ * @param acquireTimeouts - callers that gave up waiting for a connection
+ */
+case class PoolStats(maxConnections: Int, leased: Int, peakLeased: Int, pending: Int,
+                     totalLeases: Long, acquireTimeouts: Long) {
+  def available = maxConnections - leased
+
+  def utilization: Double = leased.toDouble / maxConnections
+}
+
+object ConnectionPool {
+  private val MAX_CONNECTIONS_PROPERTY = "http.maxConnections"
+
+  /**
+   * The JDK keeps idle keep-alive sockets in a cache that holds only http.maxConnections
+   * (default 5) per destination; with more connections than that in use at once, the rest
+   * are closed after each request instead of reused. Call this at startup, before the first
+   * connection is opened, to raise the limit to maxConnections unless it is already higher.
+   *
+   * This sets the JVM-wide system property, so it changes the keep-alive cache for every
+   * HttpURLConnection in the process, not just those to the gateway. Building a gateway
+   * never calls it; applications that share the JVM with other HTTP clients should decide.
+   *
+   * <pre>
+   * ConnectionPool.widenKeepAliveCache(settings.maxConnectionsPerRoute)
+   * val gateway = new BraintreeGateway(environment, merchantId, publicKey, privateKey, settings)
+   * </pre>
+   */
+  def widenKeepAliveCache(maxConnections: Int) {
+    synchronized {
+      val current = Option(System.getProperty(MAX_CONNECTIONS_PROPERTY))
+      val currentValue = current.map { v => try v.toInt catch { case e: NumberFormatException => 0 } }
+      if (currentValue.forall(_ < maxConnections)) {
+        System.setProperty(MAX_CONNECTIONS_PROPERTY, maxConnections.toString)
+      }
+    }
+  }
+}
+
+/**
+ * Bounds and measures concurrent use of the gateway connections for a single route.
+ *
+ * Sockets themselves are pooled by the JDK's HttpURLConnection keep-alive cache, which
+ * reuses a connection once its response has been fully read and closed, and evicts it
+ * when it has sat idle past the server's keep-alive timeout. This class bounds the number
+ * of live connections; for all of them to be reused, that cache must also hold as many,
+ * see {@link ConnectionPool#widenKeepAliveCache}.
+ */
+class ConnectionPool(val settings: ConnectionPoolSettings) {
+
+  private val permits = new Semaphore(settings.maxConnectionsPerRoute, true)
+  private val leased = new AtomicInteger
+  private val peakLeased = new AtomicInteger
+  private val pending = new AtomicInteger
+  private val totalLeases = new AtomicLong
+  private val acquireTimeouts = new AtomicLong
+
+  def withConnection[T](block: => T): T = {
+    acquire()
+    try {
+      block
+    }
+    finally {
+      release()
+    }
+  }
+
+  def stats: PoolStats = {
+    PoolStats(
+      maxConnections = settings.maxConnectionsPerRoute,
+      leased = leased.get,
+      peakLeased = peakLeased.get,
+      pending = pending.get,
+      totalLeases = totalLeases.get,
+      acquireTimeouts = acquireTimeouts.get
+    )
+  }
+
+  private def acquire() {
+    pending.incrementAndGet
+    val acquired = try {
+      permits.tryAcquire(settings.acquireTimeoutMillis, TimeUnit.MILLISECONDS)
+    }
+    catch {
+      case e: InterruptedException => {
+        Thread.currentThread.interrupt()
+        throw new UnexpectedException("interrupted waiting for a gateway connection", e)
+      }
+    }
+    finally {
+      pending.decrementAndGet
+    }
+    if (!acquired) {
+      acquireTimeouts.incrementAndGet
+      throw new UnexpectedException("timed out after " + settings.acquireTimeoutMillis +
+        "ms waiting for one of " + settings.maxConnectionsPerRoute + " gateway connections")
+    }
+    totalLeases.incrementAndGet
+    val nowLeased = leased.incrementAndGet
+    var peak = peakLeased.get
+    while (nowLeased > peak && !peakLeased.compareAndSet(peak, nowLeased)) {
+      peak = peakLeased.get
+    }
+  }
+
+  private def release() {
+    leased.decrementAndGet
+    permits.release()
+  }
+}
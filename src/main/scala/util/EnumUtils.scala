@@ -1,5 +1,7 @@
 package net.bhardy.braintree.scala.util
 
+import java.util.concurrent.ConcurrentHashMap
+
 object EnumUtils {
 
   def createLookupFromString[E <: java.lang.Enum[E]](values:Array[E]): String => Option[E] = {
@@ -7,16 +9,62 @@ object EnumUtils {
     key => map get key
   }
 
+  /**
+   * Names and fallback values of one enum class, built once per class.
+   */
+  private class Table[T <: Enum[T]](enumType: Class[T]) {
+    private val byName: Map[String, T] = enumType.getEnumConstants.map { v => v.name -> v }.toMap
+
+    val unrecognized = byName.get("UNRECOGNIZED")
+
+    val undefined = byName.get("UNDEFINED")
+
+    /**
+     * Gateway values as sent, e.g. "submitted_for_settlement" or "Past Due". There are few
+     * of them, but the cache stops growing at MAX_RAW_NAMES in case of unexpected input.
+     */
+    private val byRawName = new ConcurrentHashMap[String, Option[T]]
+
+    def lookup(valueName: String): Option[T] = byName.get(valueName)
+
+    def lookupRaw(name: String): Option[T] = {
+      val cached = byRawName.get(name)
+      if (cached != null) {
+        cached
+      } else {
+        val found = byName.get(name.toUpperCase.replace(' ', '_'))
+        if (byRawName.size < MAX_RAW_NAMES) {
+          byRawName.putIfAbsent(name, found)
+        }
+        found
+      }
+    }
+  }
+
+  private final val MAX_RAW_NAMES = 256
+
+  private val tables = new ConcurrentHashMap[Class[_], Table[_]]
+
+  private def table[T <: Enum[T]](enumType: Class[T]): Table[T] = {
+    val existing = tables.get(enumType)
+    if (existing != null) {
+      existing.asInstanceOf[Table[T]]
+    } else {
+      tables.putIfAbsent(enumType, new Table(enumType))
+      tables.get(enumType).asInstanceOf[Table[T]]
+    }
+  }
+
   def findByNameOpt[T <: Enum[T]](enumType: Class[T])(nameWrapper: Option[String]): T = {
+    val values = table(enumType)
     Option(nameWrapper).flatten.map { name =>
-      val underscoredName = name.toUpperCase.replaceAll(" ", "_")
-      lookup(enumType, underscoredName).
-        orElse(lookup(enumType, "UNRECOGNIZED")).
+      values.lookupRaw(name).
+        orElse(values.unrecognized).
         getOrElse {
         throw new IllegalStateException(s"couldn't find enum ${enumType.getName} with value ${name} or UNRECOGNIZED!")
       }
     } getOrElse {
-      lookup(enumType, "UNDEFINED").
+      values.undefined.
         getOrElse {
         throw new IllegalStateException(s"couldn't find enum ${enumType.getName} with value UNDEFINED! " +
           "i.e. This field can be null and we don't have an UNDEFINED enum value to which we can map that. " +
@@ -30,13 +78,6 @@ object EnumUtils {
   }
 
   def lookup[T <: Enum[T]](enumType: Class[T], valueName: String): Option[T] = {
-    try {
-      Some(Enum.valueOf(enumType, valueName))
-    }
-    catch {
-      case e: IllegalArgumentException => {
-        None
-      }
-    }
+    table(enumType).lookup(valueName)
   }
-}
\ No newline at end of file
+}
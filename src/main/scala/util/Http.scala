@@ -1,20 +1,9 @@
 package net.bhardy.braintree.scala.util
 
-import net.bhardy.braintree.scala.gw.Configuration
 import net.bhardy.braintree.scala.Request
 import net.bhardy.braintree.scala.exceptions._
-import javax.net.ssl._
 import java.io.IOException
-import java.io.InputStream
-import java.net.HttpURLConnection
-import java.net.URL
-import java.security.KeyStore
-import java.security.SecureRandom
-import java.security.cert.Certificate
-import java.security.cert.CertificateFactory
-import java.util.zip.GZIPInputStream
 import net.bhardy.braintree.scala.util.Http.RequestMethod
-import xml.Elem
 
 object Http {
   def throwExceptionIfErrorStatusCode(statusCode: Int, message: Option[String] = None) {
@@ -55,7 +44,33 @@ object Http {
   val DummyNode = new SimpleNodeWrapper( <none/>.toString)
 }
 
-class Http(authorizationHeader: String, baseMerchantURL: String, certificateFilenames: List[String], version: String) {
+/**
+ * Sends requests to the gateway and interprets the responses: error statuses become
+ * exceptions and response bodies become {@link NodeWrapper}s. How the bytes travel is
+ * up to the {@link HttpTransport}.
+ *
+ * With coalesceReads, identical reads in flight at the same time (GETs, and searches
+ * posted to advanced_search or advanced_search_ids, with the same path and body) are sent
+ * once and all their callers share the parsed response.
+ *
+ * The ids found by advanced_search_ids go straight from the stream into {@link PackedIds},
+ * whatever the nodeWrapperFactory, as a broad search can find millions.
+ */
+class Http(val transport: HttpTransport, val nodeWrapperFactory: NodeWrapperFactory, coalesceReads: Boolean = false) {
+
+  def this(transport: HttpTransport) = this(transport, NodeWrapperFactory)
+
+  def this(authorizationHeader: String, baseMerchantURL: String, certificateFilenames: List[String], version: String,
+           poolSettings: ConnectionPoolSettings = ConnectionPoolSettings()) = {
+    this(new UrlConnectionTransport(authorizationHeader, baseMerchantURL, certificateFilenames, version, poolSettings))
+  }
+
+  /**
+   * Does the transport's expensive setup, e.g. TLS, ahead of the first request.
+   */
+  def warmUp() {
+    transport.warmUp()
+  }
 
   def delete(url: String) {
     httpRequest(RequestMethod.DELETE, url)
@@ -70,7 +85,7 @@ class Http(authorizationHeader: String, baseMerchantURL: String, certificateFile
   }
 
   def post(url: String, request: Request): NodeWrapper = {
-    httpRequest(RequestMethod.POST, url, request.toXml)
+    httpRequest(RequestMethod.POST, url, Some(request))
   }
 
   def put(url: String): NodeWrapper = {
@@ -78,94 +93,53 @@ class Http(authorizationHeader: String, baseMerchantURL: String, certificateFile
   }
 
   def put(url: String, request: Request): NodeWrapper = {
-    httpRequest(RequestMethod.PUT, url, request.toXml)
+    httpRequest(RequestMethod.PUT, url, Some(request))
   }
 
-  private def httpRequest(requestMethod: Http.RequestMethod, url: String, postBody: Option[Elem] = None): NodeWrapper = {
-    try {
-      val connection = connectionSetup(requestMethod, url)
-      postBody.map { writePostBody(connection) }
-
-      Http.throwExceptionIfErrorStatusCode(connection.getResponseCode)
-      val response = fetchResponse(connection)
-
-      if (requestMethod == RequestMethod.DELETE) {
-        Http.DummyNode
-      } else {
-        NodeWrapperFactory.create(response)
-      }
-   }
-    catch {
-      case e: IOException => {
-        throw new UnexpectedException(e.getMessage, e)
-      }
-    }
+  private val reads = {
+    if (coalesceReads) Some(new SingleFlight[(Http.RequestMethod, String, Option[String]), NodeWrapper]) else None
   }
 
-  def connectionSetup(requestMethod: Http.RequestMethod, url: String): HttpURLConnection = {
-    buildConnection(requestMethod, url) match {
-      case secureConnection: HttpsURLConnection => {
-        secureConnection.setSSLSocketFactory(getSSLSocketFactory)
-        secureConnection
+  /**
+   * How many reads shared another's response, if reads are coalesced.
+   */
+  def coalescingStats: Option[CoalescingStats] = reads.map { _.stats }
+
+  private def httpRequest(requestMethod: Http.RequestMethod, url: String, postBody: Option[ToXml] = None): NodeWrapper = {
+    reads match {
+      case Some(flights) if isRead(requestMethod, url) => {
+        val body = postBody.map { RequestBody(_).toBytes }
+        flights((requestMethod, url, body.map { new String(_, "UTF-8") })) {
+          send(HttpRequest(requestMethod, url, body.map { RequestBody(_) }))
+        }
       }
-      case other => other
+      case _ => send(HttpRequest(requestMethod, url, postBody.map { RequestBody(_) }))
     }
   }
 
-  def writePostBody(connection: HttpURLConnection)(body: Elem) {
-    connection.getOutputStream.write(body.toString.getBytes("UTF-8"))
-    connection.getOutputStream.close
-  }
-
-  def fetchResponse(connection: HttpURLConnection): String = {
-    val isFailed = connection.getResponseCode == 422
-    val streamSource = if (isFailed) connection.getErrorStream else connection.getInputStream
-
-    val isCompressed = "gzip".equalsIgnoreCase(connection.getContentEncoding)
-    val responseStream = if (isCompressed) new GZIPInputStream(streamSource) else streamSource
-
-    val xml = StringUtils.inputStreamToString(responseStream)
-    responseStream.close
-    xml
+  private def isRead(requestMethod: Http.RequestMethod, url: String) = {
+    requestMethod == RequestMethod.GET ||
+      requestMethod == RequestMethod.POST && (url.endsWith("/advanced_search") || url.endsWith("/advanced_search_ids"))
   }
 
-  private def getSSLSocketFactory: SSLSocketFactory = {
+  private def send(request: HttpRequest): NodeWrapper = {
+    val requestMethod = request.method
     try {
-      val keyStore = KeyStore.getInstance(KeyStore.getDefaultType)
-      keyStore.load(null)
-      for (certificateFilename <- certificateFilenames) {
-        val cf: CertificateFactory = CertificateFactory.getInstance("X.509")
-        val certStream: InputStream = classOf[Http].getClassLoader.getResourceAsStream(certificateFilename)
-        val cert: Certificate = cf.generateCertificate(certStream)
-        keyStore.setCertificateEntry(certificateFilename, cert)
+      transport.execute(request) { response =>
+        Http.throwExceptionIfErrorStatusCode(response.statusCode)
+        if (requestMethod == RequestMethod.DELETE) {
+          Http.DummyNode
+        } else if (request.path.endsWith("/advanced_search_ids")) {
+          SearchIdsNodeWrapper.parse(response.body)
+        } else {
+          nodeWrapperFactory.create(response.body)
+        }
       }
-      val kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm)
-      kmf.init(keyStore, null)
-      val tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm)
-      tmf.init(keyStore)
-      val sslContext = SSLContext.getInstance("TLS")
-      sslContext.init(kmf.getKeyManagers, tmf.getTrustManagers, SecureRandom.getInstance("SHA1PRNG"))
-      sslContext.getSocketFactory
     }
     catch {
-      case e: Exception => {
+      case e: IOException => {
         throw new UnexpectedException(e.getMessage, e)
       }
     }
   }
-
-  private def buildConnection(requestMethod: Http.RequestMethod, urlString: String): HttpURLConnection = {
-    val url = new URL(baseMerchantURL + urlString)
-    val connection = url.openConnection.asInstanceOf[HttpURLConnection]
-    connection.setRequestMethod(requestMethod.toString)
-    connection.addRequestProperty("Accept", "application/xml")
-    connection.addRequestProperty("User-Agent", "Braintree Java " + version)
-    connection.addRequestProperty("X-ApiVersion", Configuration.apiVersion)
-    connection.addRequestProperty("Authorization", authorizationHeader)
-    connection.addRequestProperty("Accept-Encoding", "gzip")
-    connection.addRequestProperty("Content-Type", "application/xml")
-    connection.setDoOutput(true)
-    connection.setReadTimeout(60000)
-    connection
-  }
-}
\ No newline at end of file
+}
@@ -0,0 +1,108 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.zip.GZIPInputStream
+
+/**
+ * The wire underneath {@link Http}. Http decides what to send and what a response
+ * means (status codes to exceptions, bodies to {@link NodeWrapper}s); a transport only
+ * moves requests to the gateway and responses back. Implementations must be safe for
+ * use by many threads at once, since one is shared by all gateways of a BraintreeGateway.
+ *
+ * The default is {@link UrlConnectionTransport}. {@link InMemoryTransport} answers
+ * requests from local handlers without any network.
+ */
+trait HttpTransport {
+
+  /**
+   * Sends the request and hands the response to handleResponse. The response body is
+   * only valid inside handleResponse; the transport cleans up after it returns or throws.
+   */
+  def execute[T](request: HttpRequest)(handleResponse: HttpResponse => T): T
+
+  /**
+   * Does any expensive setup ahead of the first request. Optional.
+   */
+  def warmUp() {}
+
+  /**
+   * Connection usage, for transports that pool connections.
+   */
+  def poolStats: Option[PoolStats] = None
+}
+
+/**
+ * @param method - the HTTP method
+ * @param path - path relative to the merchant URL, e.g. /transactions/abc123, possibly with a query string
+ * @param body - XML request body, if any
+ */
+case class HttpRequest(method: Http.RequestMethod, path: String, body: Option[RequestBody] = None)
+
+/**
+ * A request body, produced while the transport sends it rather than ahead of time.
+ */
+trait RequestBody {
+
+  /**
+   * Writes the UTF-8 encoded body. Does not close the stream.
+   */
+  def writeTo(out: OutputStream)
+
+  def toBytes: Array[Byte] = {
+    val bytes = new ByteArrayOutputStream
+    writeTo(bytes)
+    bytes.toByteArray
+  }
+}
+
+object RequestBody {
+
+  /**
+   * Streams the XML through {@link ToXml#writeXml}.
+   */
+  def apply(xml: ToXml): RequestBody = new RequestBody {
+    def writeTo(out: OutputStream) {
+      val writer = new XmlWriter(out)
+      xml.writeXml(writer)
+      writer.flush()
+    }
+  }
+
+  def apply(bytes: Array[Byte]): RequestBody = new RequestBody {
+    def writeTo(out: OutputStream) {
+      out.write(bytes)
+    }
+
+    override def toBytes = bytes
+  }
+}
+
+/**
+ * @param statusCode - the HTTP status code
+ * @param rawBody - body bytes as received
+ * @param contentEncoding - the Content-Encoding of rawBody; gzip is the only one understood
+ */
+class HttpResponse(val statusCode: Int, rawBody: InputStream, contentEncoding: Option[String] = None) {
+
+  private var decoded: Option[InputStream] = None
+
+  /**
+   * The decoded response body.
+   */
+  def body: InputStream = {
+    decoded getOrElse {
+      val stream = if (contentEncoding.exists("gzip".equalsIgnoreCase)) new GZIPInputStream(rawBody) else rawBody
+      decoded = Some(stream)
+      stream
+    }
+  }
+
+  /**
+   * For transports, to release the decoder once the response has been handled.
+   */
+  def close() {
+    decoded.foreach { _.close }
+  }
+}
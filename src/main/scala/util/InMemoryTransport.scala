@@ -0,0 +1,168 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.ByteArrayInputStream
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicLong
+import java.util.regex.Pattern
+import scala.collection.JavaConversions._
+import scala.collection.mutable.LinkedHashMap
+import xml.Elem
+import XmlUtil.tag
+
+object InMemoryTransport {
+
+  /**
+   * A request as a handler sees it.
+   *
+   * @param method - the HTTP method
+   * @param path - the path without its query string
+   * @param captures - values of the :name segments of the route, in order
+   * @param query - decoded query string parameters
+   * @param body - the parsed request XML, if any
+   */
+  case class Call(method: Http.RequestMethod, path: String, captures: List[String], query: Map[String, String],
+                  body: Option[NodeWrapper])
+
+  case class Reply(statusCode: Int, body: String = "")
+
+  object Reply {
+    def apply(xml: Elem): Reply = Reply(200, xml.toString)
+
+    def created(xml: Elem) = Reply(201, xml.toString)
+
+    def unprocessable(xml: Elem) = Reply(422, xml.toString)
+
+    val notFound = Reply(404)
+  }
+
+  type Handler = Call => Reply
+
+  private[util] class Route(method: Http.RequestMethod, template: String, val handler: Handler) {
+    private val pattern = Pattern.compile(template.split("/", -1).map { segment =>
+      if (segment.startsWith(":")) "([^/]+)" else Pattern.quote(segment)
+    }.mkString("/"))
+
+    def matches(requestMethod: Http.RequestMethod, path: String): Option[List[String]] = {
+      val matcher = pattern.matcher(path)
+      if (requestMethod == method && matcher.matches) {
+        Some((1 to matcher.groupCount).map { i => QueryString.decode(matcher.group(i)) }.toList)
+      } else {
+        None
+      }
+    }
+  }
+}
+
+/**
+ * An {@link HttpTransport} that answers from handlers running in the calling thread instead
+ * of going over the network. Lets the whole client stack (request rendering, response parsing,
+ * paging) be exercised and load tested without a gateway.
+ *
+ * Routes are tried in the order they were added. Path templates use :name for a variable
+ * segment, e.g. "/customers/:customerId/addresses/:id". Unrouted requests get a 404.
+ *
+ * <pre>
+ * val transport = new InMemoryTransport
+ * val transactions = transport.resource("/transactions", "transaction")
+ * transactions.put("abc", &lt;transaction&gt;&lt;id&gt;abc&lt;/id&gt;&lt;/transaction&gt;)
+ * transport.route(Http.RequestMethod.POST, "/transactions") { call =&gt; Reply.created(...) }
+ * val gateway = new BraintreeGateway(Environment.SANDBOX, "merchant", "public", "private", transport)
+ * </pre>
+ */
+class InMemoryTransport extends HttpTransport {
+
+  import InMemoryTransport._
+
+  private val routes = new CopyOnWriteArrayList[Route]
+  private val requests = new AtomicLong
+
+  def route(method: Http.RequestMethod, pathTemplate: String)(handler: Handler): this.type = {
+    routes.add(new Route(method, pathTemplate, handler))
+    this
+  }
+
+  /**
+   * Serves a searchable resource the way the gateway does: find by id at GET path/:id, and
+   * the two step search at POST path/advanced_search_ids and POST path/advanced_search.
+   * Search criteria other than ids are ignored; every stored record matches.
+   *
+   * @param path - e.g. "/transactions", "/customers", "/subscriptions" or "/verifications"
+   * @param elementName - the record's XML element, e.g. "transaction"
+   * @param pageSize - page size reported by advanced_search_ids
+   */
+  def resource(path: String, elementName: String, pageSize: Int = 50): Resource = {
+    val resource = new Resource(pageSize)
+    route(Http.RequestMethod.POST, path + "/advanced_search_ids") { call =>
+      Reply(resource.searchResults)
+    }
+    route(Http.RequestMethod.POST, path + "/advanced_search") { call =>
+      val ids = call.body.map { _.findAllStrings("ids/item") } getOrElse Nil
+      Reply(tag(elementName + "s").withType("array").content(resource.get(ids)))
+    }
+    route(Http.RequestMethod.GET, path + "/:id") { call =>
+      resource.get(call.captures.head).map { Reply(_) } getOrElse Reply.notFound
+    }
+    resource
+  }
+
+  /**
+   * Number of requests handled so far.
+   */
+  def requestCount: Long = requests.get
+
+  def execute[T](request: HttpRequest)(handleResponse: HttpResponse => T): T = {
+    requests.incrementAndGet
+    val (path, queryString) = request.path.indexOf('?') match {
+      case -1 => (request.path, "")
+      case at => (request.path.substring(0, at), request.path.substring(at + 1))
+    }
+    val query = queryString.split("&").filter { _.nonEmpty }.map { pair =>
+      pair.split("=", 2) match {
+        case Array(key, value) => QueryString.decode(key) -> QueryString.decode(value)
+        case Array(key) => QueryString.decode(key) -> ""
+      }
+    }.toMap
+    val body = request.body.map { xml => NodeWrapperFactory.create(new ByteArrayInputStream(xml.toBytes)) }
+
+    val matched = routes.iterator.map { route =>
+      route.matches(request.method, path).map { captures => (route, captures) }
+    }.collectFirst { case Some(found) => found }
+
+    val reply = matched.map { case (route, captures) =>
+      route.handler(Call(request.method, path, captures, query, body))
+    } getOrElse Reply.notFound
+
+    handleResponse(new HttpResponse(reply.statusCode, new ByteArrayInputStream(reply.body.getBytes("UTF-8"))))
+  }
+
+  /**
+   * Records served by {@link InMemoryTransport#resource}, in insertion order.
+   */
+  class Resource(pageSize: Int) {
+    private val records = new LinkedHashMap[String, Elem]
+
+    def put(id: String, record: Elem): this.type = {
+      records.synchronized { records(id) = record }
+      this
+    }
+
+    def remove(id: String): this.type = {
+      records.synchronized { records -= id }
+      this
+    }
+
+    def get(id: String): Option[Elem] = records.synchronized { records.get(id) }
+
+    def get(ids: List[String]): List[Elem] = records.synchronized { ids.flatMap(records.get) }
+
+    def size: Int = records.synchronized { records.size }
+
+    private[InMemoryTransport] def searchResults: Elem = {
+      val ids = records.synchronized { records.keys.toList }
+      <search-results>
+        <page-size>{pageSize}</page-size>
+        {tag("ids").withType("array").content(ids.map { id => tag("item").content(id) })}
+      </search-results>
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.InputStream
+import java.io.Reader
+import java.io.StringReader
+import java.util.Arrays
+import javax.xml.stream.XMLStreamConstants._
+import javax.xml.stream.XMLStreamException
+import javax.xml.stream.XMLStreamReader
+import collection.mutable.ArrayStack
+import collection.mutable.ListBuffer
+
+object LazyNodeWrapper {
+
+  def parse(string: String): LazyNodeWrapper = parse(new StringReader(string))
+
+  def parse(stream: InputStream): LazyNodeWrapper = EventTape.record(StaxParser.newReader(stream)).root
+
+  def parse(reader: Reader): LazyNodeWrapper = EventTape.record(StaxParser.newReader(reader)).root
+}
+
+/**
+ * A {@link NodeWrapper} over the recorded parse events of a document rather than a tree of
+ * {@link SimpleNodeWrapper}s. The document is parsed once into a few flat arrays, and each
+ * element records the offset where its subtree ends, so a lookup steps over the subtrees it
+ * does not go into. Wrappers for child elements are only created when a path reaches them.
+ *
+ * Wide responses, e.g. a customer with many credit cards and addresses, then cost roughly
+ * what the caller reads: reading id and status does not build the credit card subtrees.
+ * {@link #materialize} converts a subtree to a {@link SimpleNodeWrapper} where a tree is needed.
+ */
+class LazyNodeWrapper private[util](tape: EventTape, index: Int) extends NodeWrapper {
+
+  def findAll(expression: String): List[NodeWrapper] = {
+    val nodes = new ListBuffer[NodeWrapper]
+    findAll(index, PathExpression.steps(expression), nodes)
+    nodes.toList
+  }
+
+  private def findAll(at: Int, steps: List[String], nodes: ListBuffer[NodeWrapper]) {
+    steps match {
+      case Nil => nodes += tape.node(at)
+      case step :: rest => {
+        var child = tape.firstChild(at)
+        while (child != EventTape.NONE) {
+          if (tape.matches(child, step)) {
+            findAll(child, rest, nodes)
+          }
+          child = tape.nextSibling(child, at)
+        }
+      }
+    }
+  }
+
+  private def find(at: Int, steps: List[String]): Int = {
+    steps match {
+      case Nil => at
+      case step :: rest => {
+        var child = tape.firstChild(at)
+        while (child != EventTape.NONE && !tape.matches(child, step)) {
+          child = tape.nextSibling(child, at)
+        }
+        if (child == EventTape.NONE) EventTape.NONE else find(child, rest)
+      }
+    }
+  }
+
+  private def find(expression: String): Int = find(index, PathExpression.steps(expression))
+
+  @deprecated("null-based; use findFirstOpt", "0.1")
+  def findFirst(expression: String): NodeWrapper = findFirstOpt(expression).getOrElse(null)
+
+  def findFirstOpt(expression: String): Option[NodeWrapper] = {
+    find(expression) match {
+      case EventTape.NONE => None
+      case found => Some(tape.node(found))
+    }
+  }
+
+  @deprecated("null-based; use findStringOpt", "0.1")
+  def findString(expression: String): String = findStringOpt(expression).getOrElse(null)
+
+  def findStringOpt(expression: String): Option[String] = {
+    find(expression) match {
+      case EventTape.NONE => None
+      case found => Option(tape.stringValue(found))
+    }
+  }
+
+  def getElementName = tape.name(index)
+
+  def getFormParameters: Map[String, String] = materialize.getFormParameters
+
+  /**
+   * Builds the {@link SimpleNodeWrapper} tree for this element.
+   */
+  def materialize: SimpleNodeWrapper = tape.materialize(index)
+
+  override def toString = materialize.toString
+}
+
+/**
+ * Parse events of one document, in document order. Event i is either the start of an
+ * element, with its name in values(i) and ends(i) the offset just past its subtree, or a
+ * text event, with its text in values(i) and ends(i) == TEXT. Whitespace-only text is
+ * dropped, as by {@link StaxParser}.
+ */
+private[util] final class EventTape(values: Array[String], attributes: Array[Map[String, String]],
+                                    ends: Array[Int]) {
+
+  import EventTape._
+
+  def root = node(0)
+
+  def node(at: Int) = new LazyNodeWrapper(this, at)
+
+  def name(at: Int): String = values(at)
+
+  def matches(element: Int, step: String): Boolean = "*" == step || step == values(element)
+
+  def firstChild(element: Int): Int = nextElement(element + 1, ends(element))
+
+  def nextSibling(element: Int, parent: Int): Int = nextElement(ends(element), ends(parent))
+
+  private def nextElement(from: Int, until: Int): Int = {
+    var at = from
+    while (at < until && ends(at) == TEXT) {
+      at += 1
+    }
+    if (at < until) at else NONE
+  }
+
+  def stringValue(element: Int): String = {
+    if (attributes(element).get("nil") == Some("true")) {
+      null // legacy, as in SimpleNodeWrapper
+    }
+    else if (firstChild(element) != NONE) {
+      materialize(element).findString(".")
+    }
+    else {
+      val end = ends(element)
+      if (end == element + 2) {
+        values(element + 1).trim
+      } else {
+        val text = new StringBuilder
+        for (at <- element + 1 until end) text.append(values(at))
+        text.toString.trim
+      }
+    }
+  }
+
+  def materialize(element: Int): SimpleNodeWrapper = {
+    val content = new ListBuffer[NodeType]
+    var at = element + 1
+    while (at < ends(element)) {
+      if (ends(at) == TEXT) {
+        content += TextNode(values(at))
+        at += 1
+      } else {
+        content += materialize(at)
+        at = ends(at)
+      }
+    }
+    SimpleNodeWrapper(values(element), attributes(element), content.toList)
+  }
+}
+
+private[util] object EventTape {
+
+  final val NONE = -1
+
+  final val TEXT = -1
+
+  def record(reader: XMLStreamReader): EventTape = {
+    val builder = new Builder
+    val open = new ArrayStack[Int]
+
+    try {
+      while (reader.hasNext) {
+        reader.next match {
+          case START_ELEMENT => {
+            open.push(builder.add(reader.getLocalName, StaxParser.attributes(reader)))
+          }
+          case CHARACTERS | CDATA => {
+            if (!open.isEmpty && !reader.isWhiteSpace) {
+              builder.add(reader.getText, null)
+            }
+          }
+          case END_ELEMENT => {
+            builder.end(open.pop)
+          }
+          case _ =>
+        }
+      }
+    }
+    catch {
+      case e: XMLStreamException => throw new IllegalArgumentException(e.getMessage, e)
+    }
+    finally {
+      reader.close()
+    }
+
+    if (builder.size == 0) {
+      throw new IllegalArgumentException("no root found")
+    }
+    builder.result
+  }
+
+  private class Builder {
+    private var values = new Array[String](64)
+    private var attributes = new Array[Map[String, String]](64)
+    private var ends = new Array[Int](64)
+    var size = 0
+
+    /**
+     * Adds an element start when attributes are given, otherwise text.
+     */
+    def add(value: String, attributeMap: Map[String, String]): Int = {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2)
+        attributes = Arrays.copyOf(attributes, size * 2)
+        ends = Arrays.copyOf(ends, size * 2)
+      }
+      values(size) = value
+      attributes(size) = attributeMap
+      ends(size) = TEXT
+      size += 1
+      size - 1
+    }
+
+    def end(element: Int) {
+      ends(element) = size
+    }
+
+    def result = new EventTape(values, attributes, ends)
+  }
+}
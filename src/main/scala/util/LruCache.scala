@@ -0,0 +1,82 @@
+package net.bhardy.braintree.scala.util
+
+import java.util.LinkedHashMap
+
+/**
+ * A map that drops its least recently used entries once it holds more than maxEntries,
+ * or once the weights of its values add up to more than maxWeight. An entry too heavy
+ * to fit on its own is not kept at all.
+ */
+class LruCache[K, V](maxEntries: Int, maxWeight: Long, weigh: V => Long = { v: V => 1L }) {
+
+  require(maxEntries > 0, "maxEntries must be positive")
+  require(maxWeight > 0, "maxWeight must be positive")
+
+  private val entries = new LinkedHashMap[K, V](16, 0.75f, true)
+  private var totalWeight = 0L
+  private var evictions = 0L
+
+  def get(key: K): Option[V] = synchronized {
+    Option(entries.get(key))
+  }
+
+  /**
+   * Keeps value for key, in place of any value before it. A value heavier than maxWeight
+   * only removes the one before it, rather than evicting every other entry to no avail.
+   */
+  def put(key: K, value: V) {
+    val valueWeight = weigh(value)
+    synchronized {
+      remove(key)
+      if (valueWeight <= maxWeight) {
+        entries.put(key, value)
+        totalWeight += valueWeight
+        val eldest = entries.entrySet.iterator
+        while (entries.size > maxEntries || totalWeight > maxWeight) {
+          totalWeight -= weigh(eldest.next.getValue)
+          eldest.remove()
+          evictions += 1
+        }
+      }
+    }
+  }
+
+  def remove(key: K) {
+    synchronized {
+      val removed = entries.remove(key)
+      if (removed != null) totalWeight -= weigh(removed)
+    }
+  }
+
+  /**
+   * Removes every entry matching the predicate; a scan of the whole cache.
+   */
+  def removeWhere(matches: (K, V) => Boolean) {
+    synchronized {
+      val each = entries.entrySet.iterator
+      while (each.hasNext) {
+        val entry = each.next
+        if (matches(entry.getKey, entry.getValue)) {
+          totalWeight -= weigh(entry.getValue)
+          each.remove()
+        }
+      }
+    }
+  }
+
+  def clear() {
+    synchronized {
+      entries.clear()
+      totalWeight = 0
+    }
+  }
+
+  def size: Int = synchronized { entries.size }
+
+  def weight: Long = synchronized { totalWeight }
+
+  /**
+   * Entries dropped to make room since the cache was created.
+   */
+  def evicted: Long = synchronized { evictions }
+}
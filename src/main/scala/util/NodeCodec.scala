@@ -0,0 +1,101 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, DataInputStream, DataOutputStream}
+import collection.mutable
+
+/**
+ * A compact binary form of a parsed response, for keeping one without its XML. Each distinct
+ * string, whether an element name, attribute or text, is written once and afterwards referred
+ * to by number, so the repeated element names of a response cost a few bytes each.
+ *
+ * Nodes from the factories in this package can be encoded. A bound node is encoded with just
+ * the values its binding kept.
+ */
+object NodeCodec {
+
+  private final val ELEMENT = 0
+
+  private final val TEXT = 1
+
+  def encode(node: NodeWrapper): Array[Byte] = {
+    val bytes = new ByteArrayOutputStream
+    val out = new DataOutputStream(bytes)
+    val strings = new mutable.HashMap[String, Int]
+
+    def writeString(value: String) {
+      strings.get(value) match {
+        case Some(number) => out.writeInt(number)
+        case None => {
+          strings(value) = strings.size
+          val utf8 = value.getBytes("UTF-8")
+          out.writeInt(-1 - utf8.length)
+          out.write(utf8)
+        }
+      }
+    }
+
+    def writeElement(element: SimpleNodeWrapper) {
+      writeString(element.name)
+      out.writeInt(element.attributes.size)
+      for ((name, value) <- element.attributes) {
+        writeString(name)
+        writeString(value)
+      }
+      out.writeInt(element.content.size)
+      element.content foreach {
+        case child: SimpleNodeWrapper => {
+          out.writeByte(ELEMENT)
+          writeElement(child)
+        }
+        case text: TextNode => {
+          out.writeByte(TEXT)
+          writeString(text.value)
+        }
+        case other => throw new IllegalArgumentException("cannot encode " + other.getClass.getName)
+      }
+    }
+
+    writeElement(tree(node))
+    out.flush()
+    bytes.toByteArray
+  }
+
+  def decode(bytes: Array[Byte]): SimpleNodeWrapper = {
+    val in = new DataInputStream(new ByteArrayInputStream(bytes))
+    val strings = new mutable.ArrayBuffer[String]
+
+    def readString(): String = {
+      val reference = in.readInt
+      if (reference >= 0) {
+        strings(reference)
+      } else {
+        val utf8 = new Array[Byte](-1 - reference)
+        in.readFully(utf8)
+        val value = new String(utf8, "UTF-8")
+        strings += value
+        value
+      }
+    }
+
+    def readElement(): SimpleNodeWrapper = {
+      val name = readString()
+      val attributes = List.fill(in.readInt) { (readString(), readString()) }.toMap
+      val content = List.fill(in.readInt) {
+        in.readByte.toInt match {
+          case ELEMENT => readElement()
+          case TEXT => TextNode(readString())
+        }
+      }
+      SimpleNodeWrapper(name, attributes, content)
+    }
+
+    readElement()
+  }
+
+  private def tree(node: NodeWrapper): SimpleNodeWrapper = node match {
+    case simple: SimpleNodeWrapper => simple
+    case lazily: LazyNodeWrapper => lazily.materialize
+    case bound: BoundNodeWrapper => bound.materialize
+    case other => throw new IllegalArgumentException("cannot encode a " + other.getClass.getName)
+  }
+}
@@ -1,8 +1,7 @@
 package net.bhardy.braintree.scala.util
 
 import scala.math.BigDecimal
-import java.text.SimpleDateFormat
-import java.util.{Calendar, TimeZone}
+import java.util.Calendar
 
 object NodeWrapper {
   final val DATE_FORMAT: String = "yyyy-MM-dd"
@@ -12,8 +11,6 @@ object NodeWrapper {
 
 abstract class NodeWrapper {
 
-  import NodeWrapper._
-
   def findAll(expression: String): List[NodeWrapper]
 
   def findAllStrings(expression: String): List[String] = {
@@ -23,13 +20,11 @@ abstract class NodeWrapper {
   @deprecated
   def findBigDecimal(expression: String): BigDecimal = {
     val value: String = findString(expression)
-    if (value == null) null else BigDecimal(value)
+    if (value == null) null else ValueDecoder.bigDecimal(value)
   }
 
   def findBigDecimalOpt(expression: String): Option[BigDecimal] = {
-    findStringOpt(expression) map {
-       BigDecimal(_)
-    }
+    findStringOpt(expression) map ValueDecoder.bigDecimal
   }
 
   @deprecated
@@ -50,7 +45,7 @@ abstract class NodeWrapper {
     if (dateString == null) {
       return null
     }
-    parseDate(DATE_FORMAT)(dateString)
+    ValueDecoder.date(dateString)
   }
 
   @deprecated
@@ -59,30 +54,15 @@ abstract class NodeWrapper {
     if (dateString == null) {
       return null
     }
-    parseDate(DATE_TIME_FORMAT)(dateString)
+    ValueDecoder.dateTime(dateString)
   }
 
   def findDateOpt(expression: String): Option[Calendar] = {
-    findStringOpt(expression) map parseDate(DATE_FORMAT)
+    findStringOpt(expression) map ValueDecoder.date
   }
 
   def findDateTimeOpt(expression: String): Option[Calendar] = {
-    findStringOpt(expression) map parseDate(DATE_TIME_FORMAT)
-  }
-
-  private def parseDate(format: String)(dateString: String): Calendar = {
-    try {
-      val dateTimeFormat = new SimpleDateFormat(format)
-      dateTimeFormat.setTimeZone(TimeZone.getTimeZone(UTC_DESCRIPTOR))
-      val calendar = Calendar.getInstance(TimeZone.getTimeZone(UTC_DESCRIPTOR))
-      calendar.setTime(dateTimeFormat.parse(dateString))
-      calendar
-    }
-    catch {
-      case e: Exception => {
-        throw new RuntimeException(e)
-      }
-    }
+    findStringOpt(expression) map ValueDecoder.dateTime
   }
 
   @deprecated
@@ -1,12 +1,29 @@
 package net.bhardy.braintree.scala.util
 
+import java.io.InputStream
+
 trait NodeWrapperFactory {
 
   // TODO make this take an xml.Elem
   def create(xml: String): NodeWrapper
+
+  /**
+   * Parses a response body as it arrives. The stream is consumed but not closed.
+   */
+  def create(stream: InputStream): NodeWrapper
 }
 
 object NodeWrapperFactory extends NodeWrapperFactory {
   def create(xml: String) = SimpleNodeWrapper.parse(xml)
+
+  def create(stream: InputStream) = SimpleNodeWrapper.parse(stream)
 }
 
+/**
+ * Creates {@link LazyNodeWrapper}s, which only build the parts of a response that are read.
+ */
+object LazyNodeWrapperFactory extends NodeWrapperFactory {
+  def create(xml: String) = LazyNodeWrapper.parse(xml)
+
+  def create(stream: InputStream) = LazyNodeWrapper.parse(stream)
+}
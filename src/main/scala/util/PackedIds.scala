@@ -0,0 +1,157 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.{BufferedOutputStream, File, FileOutputStream, OutputStream, RandomAccessFile}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.Arrays
+import collection.mutable
+
+/**
+ * A list of ids kept as UTF-8 bytes in one contiguous arena plus an array of offsets,
+ * rather than as one String per id. Strings are only made when an id is read.
+ *
+ * Past spillThreshold bytes the arena is written to a temporary file and memory mapped,
+ * so very large search results cost little more than their offsets on the heap.
+ *
+ * <pre>
+ * val builder = PackedIds.newBuilder
+ * while (parsing) builder += nextId()
+ * val ids = builder.result()
+ * ids.slice(0, pageSize).toList
+ * </pre>
+ */
+final class PackedIds private(arena: ByteBuffer, offsets: Array[Int], val length: Int)
+  extends collection.immutable.IndexedSeq[String] {
+
+  def apply(index: Int): String = {
+    if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index.toString)
+    val start = offsets(index)
+    val bytes = new Array[Byte](offsets(index + 1) - start)
+    val view = arena.duplicate // its own position, so reads can run concurrently
+    view.position(start)
+    view.get(bytes)
+    new String(bytes, PackedIds.UTF8)
+  }
+
+  /**
+   * Whether the arena lives in a memory mapped file rather than on the heap.
+   */
+  def isMapped: Boolean = arena.isDirect
+
+  /**
+   * Bytes taken by the ids themselves, not counting offsets.
+   */
+  def arenaSize: Int = offsets(length)
+}
+
+object PackedIds {
+
+  private val UTF8 = java.nio.charset.Charset.forName("UTF-8")
+
+  final val DEFAULT_SPILL_THRESHOLD: Int = 64 * 1024 * 1024
+
+  def apply(ids: Iterable[String], spillThreshold: Int = DEFAULT_SPILL_THRESHOLD): PackedIds = {
+    val builder = new Builder(spillThreshold)
+    ids.foreach { builder += _ }
+    builder.result()
+  }
+
+  def newBuilder: Builder = new Builder(DEFAULT_SPILL_THRESHOLD)
+
+  class Builder(spillThreshold: Int) extends mutable.Builder[String, PackedIds] {
+    require(spillThreshold >= 0, "spillThreshold must not be negative")
+
+    private var arena = new Array[Byte](256)
+    private var offsets = new Array[Int](16)
+    private var count = 0
+    private var size = 0
+    private var spill: Option[(File, OutputStream)] = None
+
+    def +=(id: String): this.type = {
+      val bytes = encode(id)
+      if (spill.isEmpty && size + bytes.length > spillThreshold) {
+        spillToFile()
+      }
+      spill match {
+        case Some((_, out)) => out.write(bytes)
+        case None => {
+          if (size + bytes.length > arena.length) {
+            arena = Arrays.copyOf(arena, math.max(arena.length * 2, size + bytes.length))
+          }
+          System.arraycopy(bytes, 0, arena, size, bytes.length)
+        }
+      }
+      if (count + 2 > offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2)
+      }
+      size += bytes.length
+      count += 1
+      offsets(count) = size
+      this
+    }
+
+    def result(): PackedIds = {
+      val buffer = spill match {
+        case Some((file, out)) => {
+          out.close()
+          spill = None
+          map(file)
+        }
+        case None => ByteBuffer.wrap(Arrays.copyOf(arena, size))
+      }
+      val packed = new PackedIds(buffer, Arrays.copyOf(offsets, count + 1), count)
+      clear()
+      packed
+    }
+
+    def clear() {
+      spill.foreach { case (file, out) => out.close(); file.delete() }
+      spill = None
+      arena = new Array[Byte](256)
+      offsets = new Array[Int](16)
+      count = 0
+      size = 0
+    }
+
+    private def encode(id: String): Array[Byte] = {
+      val length = id.length
+      var ascii = true
+      var at = 0
+      while (ascii && at < length) {
+        ascii = id.charAt(at) < 0x80
+        at += 1
+      }
+      if (ascii) {
+        val bytes = new Array[Byte](length)
+        for (i <- 0 until length) bytes(i) = id.charAt(i).toByte
+        bytes
+      } else {
+        id.getBytes(UTF8)
+      }
+    }
+
+    private def spillToFile() {
+      val file = File.createTempFile("braintree-ids", ".bin")
+      file.deleteOnExit()
+      val out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024)
+      out.write(arena, 0, size)
+      arena = new Array[Byte](0)
+      spill = Some((file, out))
+    }
+
+    /**
+     * The mapping stays valid once the file is deleted on the platforms that allow deleting
+     * it; elsewhere it goes at exit.
+     */
+    private def map(file: File): ByteBuffer = {
+      val raf = new RandomAccessFile(file, "r")
+      try {
+        raf.getChannel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+      }
+      finally {
+        raf.close()
+        file.delete()
+      }
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package net.bhardy.braintree.scala.util
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Compiles the path expressions given to NodeWrapper's find methods, e.g. "credit-card/billing-address/first-name".
+ * A path is a "/" separated list of child element names where "*" matches any child and "."
+ * stays on the current node.
+ *
+ * Domain classes look up the same few hundred literal paths over and over, so compiled
+ * paths are cached. The cache stops growing at MAX_CACHED entries in case callers build
+ * paths dynamically; paths beyond that are compiled on every use.
+ */
+object PathExpression {
+
+  final val MAX_CACHED = 4096
+
+  private val compiled = new ConcurrentHashMap[String, List[String]]
+
+  /**
+   * Returns the steps of the expression, with "." steps already removed.
+   */
+  def steps(expression: String): List[String] = {
+    val cached = compiled.get(expression)
+    if (cached != null) {
+      cached
+    } else {
+      val steps = compile(expression)
+      if (compiled.size < MAX_CACHED) {
+        compiled.putIfAbsent(expression, steps)
+      }
+      steps
+    }
+  }
+
+  private def compile(expression: String): List[String] = {
+    expression.split("/").toList.filterNot { _ == "." }
+  }
+}
@@ -0,0 +1,178 @@
+package net.bhardy.braintree.scala.util
+
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicLong}
+import scala.concurrent.{ExecutionContext, Future}
+import scala.util.control.NonFatal
+
+/**
+ * Holds one loaded value for ttlMillis. Reads in the last refreshAheadMillis of that time
+ * still get the cached value, but also start a reload in the background, so a value in
+ * steady use is replaced before it expires. A read of a value expired for less than
+ * maxStaleMillis gets it at once as well, while it is reloaded in the background. A read
+ * with nothing cached, or with a value expired for longer, waits for a load and raises its
+ * error if it fails. After a failed background load, no other is tried for retryMillis,
+ * doubling with each further failure up to ttlMillis, so a failing loader is not called on
+ * every read.
+ *
+ * A value loaded in the background is dropped if {@link #invalidate} or {@link #preload} is
+ * called while it loads, as it may predate whatever they were called for.
+ */
+class RefreshAheadCache[V](load: () => V, ttlMillis: Long, refreshAheadMillis: Long,
+                           retryMillis: Long = RefreshAheadCache.DEFAULT_RETRY_MILLIS,
+                           maxStaleMillis: Long = RefreshAheadCache.DEFAULT_MAX_STALE_MILLIS,
+                           clock: () => Long = { () => System.currentTimeMillis })
+                          (implicit executionContext: ExecutionContext) {
+
+  require(ttlMillis > 0, "ttlMillis must be positive")
+  require(refreshAheadMillis >= 0 && refreshAheadMillis < ttlMillis, "refreshAheadMillis must be within ttlMillis")
+  require(retryMillis > 0, "retryMillis must be positive")
+  require(maxStaleMillis >= 0, "maxStaleMillis must not be negative")
+
+  private case class Entry(value: V, loadedAt: Long)
+
+  @volatile private var entry: Option[Entry] = None
+  private val lock = new Object
+  private val refreshing = new AtomicBoolean
+  // guarded by lock
+  private var generation = 0L
+  private var failuresInRow = 0
+  @volatile private var retryAt = 0L
+
+  private val hits = new AtomicLong
+  private val misses = new AtomicLong
+  private val refreshes = new AtomicLong
+  private val failures = new AtomicLong
+  private val staleServed = new AtomicLong
+
+  def get: V = {
+    val now = clock()
+    entry match {
+      case Some(current) if now - current.loadedAt < ttlMillis - refreshAheadMillis => {
+        hits.incrementAndGet
+        current.value
+      }
+      case Some(current) if now - current.loadedAt < ttlMillis => {
+        hits.incrementAndGet
+        refreshInBackground(now)
+        current.value
+      }
+      case Some(current) if now - current.loadedAt < ttlMillis + maxStaleMillis => {
+        staleServed.incrementAndGet
+        refreshInBackground(now)
+        current.value
+      }
+      case _ => loadNow()
+    }
+  }
+
+  /**
+   * Loads the value now, e.g. at startup so the first reader does not wait. Errors propagate.
+   */
+  def preload() {
+    lock.synchronized {
+      generation += 1
+      try {
+        loaded(load())
+        refreshes.incrementAndGet
+      }
+      catch {
+        case NonFatal(e) => {
+          failed()
+          throw e
+        }
+      }
+    }
+  }
+
+  def invalidate() {
+    lock.synchronized {
+      generation += 1
+      entry = None
+    }
+  }
+
+  def stats = CacheStats(hits.get, misses.get, refreshes.get, failures.get, staleServed.get)
+
+  /**
+   * Loads for a reader with nothing it may be given. Readers arriving meanwhile wait for the same load.
+   */
+  private def loadNow(): V = lock.synchronized {
+    entry match {
+      case Some(current) if clock() - current.loadedAt < ttlMillis => {
+        hits.incrementAndGet // loaded by whoever held the lock before
+        current.value
+      }
+      case _ => {
+        misses.incrementAndGet
+        try {
+          val value = load()
+          loaded(value)
+          value
+        }
+        catch {
+          case NonFatal(e) => {
+            failed()
+            throw e
+          }
+        }
+      }
+    }
+  }
+
+  private def refreshInBackground(now: Long) {
+    if (now >= retryAt && refreshing.compareAndSet(false, true)) {
+      val started = lock.synchronized { generation }
+      Future {
+        try {
+          val value = load()
+          lock.synchronized {
+            if (generation == started) {
+              loaded(value)
+              refreshes.incrementAndGet
+            }
+          }
+        }
+        catch {
+          case NonFatal(e) => lock.synchronized { failed() }
+        }
+        finally {
+          refreshing.set(false)
+        }
+      }
+    }
+  }
+
+  /**
+   * Called holding the lock.
+   */
+  private def loaded(value: V) {
+    entry = Some(Entry(value, clock()))
+    failuresInRow = 0
+    retryAt = 0L
+  }
+
+  /**
+   * Called holding the lock.
+   */
+  private def failed() {
+    failures.incrementAndGet
+    failuresInRow += 1
+    val backoff = retryMillis << math.min(failuresInRow - 1, 30)
+    retryAt = clock() + (if (backoff <= 0 || backoff > ttlMillis) ttlMillis else backoff)
+  }
+}
+
+object RefreshAheadCache {
+  final val DEFAULT_RETRY_MILLIS = 1000L
+
+  final val DEFAULT_MAX_STALE_MILLIS = 15 * 60 * 1000L
+}
+
+/**
+ * @param hits - reads answered from the cache
+ * @param misses - reads that had to wait for a load, because nothing was cached or it was too stale
+ * @param refreshes - loads made in the background, or by preload
+ * @param failures - loads that failed
+ * @param staleServed - reads given an expired value while it was reloaded
+ */
+case class CacheStats(hits: Long, misses: Long, refreshes: Long, failures: Long, staleServed: Long)
@@ -0,0 +1,69 @@
+package net.bhardy.braintree.scala.util
+
+import net.bhardy.braintree.scala.exceptions.UnexpectedException
+import javax.net.ssl._
+import java.io.InputStream
+import java.security.KeyStore
+import java.security.SecureRandom
+import java.security.cert.CertificateFactory
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Builds the SSL socket factories that trust the gateway certificates bundled with the library.
+ *
+ * Loading the certificates and initializing an SSLContext is expensive, so each distinct
+ * certificate list (in practice one per {@link net.bhardy.braintree.scala.Environment}) gets
+ * one factory, shared by every thread and every {@link Http} instance. Sharing the context
+ * also shares its client session cache, which is what lets later connections resume a TLS
+ * session instead of doing a full handshake, and lets the JDK keep-alive cache reuse sockets
+ * (it only hands a cached https socket back to a connection using the same factory).
+ */
+object SSLSocketFactories {
+
+  /** How long an idle TLS session may be resumed, in seconds. */
+  final val SESSION_TIMEOUT_SECONDS = 24 * 60 * 60
+
+  /** Sessions kept for resumption per context. */
+  final val SESSION_CACHE_SIZE = 1000
+
+  private val factories = new ConcurrentHashMap[List[String], SSLSocketFactory]
+
+  def forCertificates(certificateFilenames: List[String]): SSLSocketFactory = {
+    Option(factories.get(certificateFilenames)) getOrElse {
+      val built = build(certificateFilenames)
+      Option(factories.putIfAbsent(certificateFilenames, built)) getOrElse built
+    }
+  }
+
+  private def build(certificateFilenames: List[String]): SSLSocketFactory = {
+    try {
+      val keyStore = KeyStore.getInstance(KeyStore.getDefaultType)
+      keyStore.load(null)
+      val cf = CertificateFactory.getInstance("X.509")
+      for (certificateFilename <- certificateFilenames) {
+        val certStream: InputStream = classOf[Http].getClassLoader.getResourceAsStream(certificateFilename)
+        try {
+          keyStore.setCertificateEntry(certificateFilename, cf.generateCertificate(certStream))
+        }
+        finally {
+          if (certStream != null) certStream.close
+        }
+      }
+      val kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm)
+      kmf.init(keyStore, null)
+      val tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm)
+      tmf.init(keyStore)
+      val sslContext = SSLContext.getInstance("TLS")
+      sslContext.init(kmf.getKeyManagers, tmf.getTrustManagers, SecureRandom.getInstance("SHA1PRNG"))
+      val sessions = sslContext.getClientSessionContext
+      sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS)
+      sessions.setSessionCacheSize(SESSION_CACHE_SIZE)
+      sslContext.getSocketFactory
+    }
+    catch {
+      case e: Exception => {
+        throw new UnexpectedException(e.getMessage, e)
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.InputStream
+import javax.xml.stream.XMLStreamConstants._
+import javax.xml.stream.XMLStreamException
+import javax.xml.stream.XMLStreamReader
+
+/**
+ * The response of an advanced_search_ids request, with its ids read from the stream straight
+ * into {@link PackedIds}, so that no node or String per id is made on the way. Besides
+ * "page-size", it answers lookups of the ids' items for code that expects a tree; other
+ * paths are absent, as search results have nothing else.
+ */
+final class SearchIdsNodeWrapper private[util](pageSize: String, itemName: String, val ids: PackedIds)
+  extends NodeWrapper {
+
+  private def isItems(expression: String) = expression == "ids/*" || expression == "ids/" + itemName
+
+  private def item(id: String) = SimpleNodeWrapper(itemName, Map.empty, List(TextNode(id)))
+
+  def findAll(expression: String): List[NodeWrapper] = {
+    if (isItems(expression)) ids.toList.map(item) else Nil
+  }
+
+  override def findAllStrings(expression: String): List[String] = {
+    if (isItems(expression)) ids.toList else Nil
+  }
+
+  def findFirst(expression: String): NodeWrapper = findFirstOpt(expression).getOrElse(null)
+
+  def findFirstOpt(expression: String): Option[NodeWrapper] = {
+    if (isItems(expression)) ids.headOption.map(item) else None
+  }
+
+  def findString(expression: String): String = findStringOpt(expression).getOrElse(null)
+
+  def findStringOpt(expression: String): Option[String] = {
+    if (expression == "page-size") Some(pageSize) else findFirstOpt(expression).map { _.findString(".") }
+  }
+
+  def getElementName = SearchIdsNodeWrapper.ROOT
+
+  def getFormParameters: Map[String, String] = {
+    Map("page_size" -> pageSize) ++ ids.lastOption.map { "ids[" + StringUtils.underscore(itemName) + "]" -> _ }
+  }
+}
+
+object SearchIdsNodeWrapper {
+
+  private val ROOT = "search-results"
+
+  /**
+   * Parses an advanced_search_ids response as it arrives. Any other response, such as an
+   * error, is parsed into a tree. The stream is consumed but not closed.
+   */
+  def parse(stream: InputStream): NodeWrapper = {
+    val reader = StaxParser.toRoot(StaxParser.newReader(stream))
+    if (reader.getLocalName != ROOT) {
+      StaxParser.parse(reader)
+    } else {
+      try {
+        read(reader)
+      }
+      catch {
+        case e: XMLStreamException => throw new IllegalArgumentException(e.getMessage, e)
+      }
+      finally {
+        reader.close()
+      }
+    }
+  }
+
+  /**
+   * The ids of a response, from the stream if it was parsed by {@link #parse}, or else from its tree.
+   */
+  def ids(response: NodeWrapper): PackedIds = response match {
+    case streamed: SearchIdsNodeWrapper => streamed.ids
+    case tree => PackedIds(tree.findAllStrings("ids/*"))
+  }
+
+  private def read(reader: XMLStreamReader): SearchIdsNodeWrapper = {
+    val ids = PackedIds.newBuilder
+    var pageSize: String = null
+    var itemName = "item"
+    var depth = 1
+    var inIds = false
+    while (depth > 0 && reader.hasNext) {
+      reader.next match {
+        case START_ELEMENT if depth == 1 && reader.getLocalName == "page-size" => {
+          pageSize = reader.getElementText.trim
+        }
+        case START_ELEMENT if depth == 2 && inIds => {
+          itemName = reader.getLocalName
+          ids += reader.getElementText.trim
+        }
+        case START_ELEMENT => {
+          inIds = depth == 1 && reader.getLocalName == "ids"
+          depth += 1
+        }
+        case END_ELEMENT => {
+          depth -= 1
+          inIds = inIds && depth == 2
+        }
+        case _ =>
+      }
+    }
+    new SearchIdsNodeWrapper(pageSize, itemName, ids.result())
+  }
+}
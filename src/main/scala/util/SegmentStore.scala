@@ -0,0 +1,357 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.{File, IOException, RandomAccessFile}
+import java.nio.{ByteBuffer, MappedByteBuffer}
+import java.nio.channels.{FileChannel, FileLock, OverlappingFileLockException}
+import java.util.zip.CRC32
+import collection.mutable
+import scala.util.control.NonFatal
+
+/**
+ * A persistent map from string keys to byte arrays, written as an append-only log split into
+ * numbered segment files in one directory. Only the newest segment is written to; once it
+ * reaches segmentBytes it is sealed and memory mapped for reads, and a new one started.
+ * An index of where each key's latest record lies is held in memory and rebuilt by scanning
+ * the segments on open.
+ *
+ * Overwritten and removed records stay in their segments as garbage. Once garbage outweighs
+ * the live records, sealing a segment also compacts: the live records of all sealed segments
+ * are copied to one new segment which replaces them.
+ *
+ * Records carry a checksum, so a record torn by a crash mid-write is dropped when the store
+ * is next opened. Writes are not forced to disk until close; after a crash the store may
+ * have lost recent writes, but never returns damaged or superseded values.
+ *
+ * Opening takes a lock on a file in the directory, so a second store, in this process or
+ * another, cannot open the same directory until the first is closed. Segments replaced by
+ * compaction are unmapped before they are deleted, as Windows will not delete a mapped file.
+ * Unmapping relies on JDK internals; on a JVM without them, compaction on Windows fails with
+ * an IOException, leaving the store as it was before.
+ *
+ * <pre>
+ * record: crc (int) | key length (int) | value length (int, -1 removes the key) | key (UTF-8) | value
+ * </pre>
+ */
+class SegmentStore(directory: File, segmentBytes: Long = SegmentStore.DEFAULT_SEGMENT_BYTES) {
+
+  import SegmentStore._
+
+  require(segmentBytes > HEADER_BYTES && segmentBytes <= Int.MaxValue, "segmentBytes must fit in a mapped buffer")
+
+  private case class Location(segment: Segment, offset: Long, keyLength: Int, valueLength: Int) {
+    def recordBytes: Long = HEADER_BYTES + keyLength + math.max(valueLength, 0)
+  }
+
+  private class Segment(val number: Long) {
+    val file = new File(directory, fileName(number))
+    val channel = new RandomAccessFile(file, "rw").getChannel
+    private var mapped: MappedByteBuffer = null
+
+    def size: Long = channel.size
+
+    def read(offset: Long, length: Int): Array[Byte] = {
+      val bytes = new Array[Byte](length)
+      if (mapped != null) {
+        val view = mapped.duplicate
+        view.position(offset.toInt)
+        view.get(bytes)
+      } else {
+        val buffer = ByteBuffer.wrap(bytes)
+        while (buffer.hasRemaining) {
+          if (channel.read(buffer, offset + buffer.position) < 0) throw new IOException("unexpected end of " + file)
+        }
+      }
+      bytes
+    }
+
+    def append(record: ByteBuffer): Long = {
+      val offset = channel.size
+      while (record.hasRemaining) channel.write(record, offset + record.position)
+      offset
+    }
+
+    def seal() {
+      if (channel.size <= Int.MaxValue) mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size)
+    }
+
+    /**
+     * Reads copy out of the mapping while holding the store's lock, so once closed nothing
+     * uses it and it can be unmapped at once.
+     */
+    def close() {
+      if (mapped != null) unmap(mapped)
+      mapped = null
+      channel.close()
+    }
+  }
+
+  private val index = new mutable.HashMap[String, Location]
+  private val sealedSegments = new mutable.ArrayBuffer[Segment]
+  private var active: Segment = null
+  private var totalBytes = 0L
+  private var garbageBytes = 0L
+  private var closed = false
+  private var directoryLock: FileLock = null
+
+  open()
+
+  def get(key: String): Option[Array[Byte]] = synchronized {
+    checkOpen()
+    index.get(key).map { location =>
+      location.segment.read(location.offset + HEADER_BYTES + location.keyLength, location.valueLength)
+    }
+  }
+
+  def contains(key: String): Boolean = synchronized { index.contains(key) }
+
+  def put(key: String, value: Array[Byte]) {
+    synchronized {
+      checkOpen()
+      write(key, value)
+    }
+  }
+
+  def remove(key: String) {
+    synchronized {
+      checkOpen()
+      if (index.contains(key)) write(key, null)
+    }
+  }
+
+  /**
+   * Number of keys held.
+   */
+  def size: Int = synchronized { index.size }
+
+  /**
+   * Bytes of records in all segments, live or not.
+   */
+  def bytes: Long = synchronized { totalBytes }
+
+  def segmentCount: Int = synchronized { sealedSegments.size + 1 }
+
+  /**
+   * Copies the live records of the sealed segments into one segment replacing them, so the
+   * space of overwritten and removed records can be reclaimed.
+   */
+  def compact() {
+    synchronized {
+      checkOpen()
+      if (!sealedSegments.isEmpty) {
+        val inputs = sealedSegments.toList
+        val target = inputs.last
+        val temporary = new File(directory, fileName(target.number) + COMPACTING)
+        val output = new RandomAccessFile(temporary, "rw").getChannel
+        val moved = new mutable.ArrayBuffer[(String, Location)]
+        try {
+          output.truncate(0)
+          var offset = 0L
+          for ((key, location) <- index if location.segment ne active) {
+            val record = ByteBuffer.wrap(location.segment.read(location.offset, location.recordBytes.toInt))
+            while (record.hasRemaining) output.write(record, offset + record.position)
+            moved += ((key, location.copy(offset = offset)))
+            offset += location.recordBytes
+          }
+          output.force(true)
+        }
+        finally {
+          output.close()
+        }
+        // older segments go before the replacement lands: a crash in between loses records,
+        // which for a cache only costs a refetch, rather than reviving removed ones
+        for (segment <- inputs) {
+          segment.close()
+          if ((segment ne target) && !segment.file.delete()) throw new IOException("could not delete " + segment.file)
+        }
+        if (!temporary.renameTo(target.file)) {
+          target.file.delete()
+          if (!temporary.renameTo(target.file)) throw new IOException("could not replace " + target.file)
+        }
+        val compacted = new Segment(target.number)
+        compacted.seal()
+        sealedSegments.clear()
+        sealedSegments += compacted
+        for ((key, location) <- moved) index(key) = location.copy(segment = compacted)
+        totalBytes = compacted.size + active.size
+        garbageBytes = active.size - index.values.filter { _.segment eq active }.map { _.recordBytes }.sum
+      }
+    }
+  }
+
+  /**
+   * Forces pending writes to disk and releases the segment files and the directory.
+   */
+  def close() {
+    synchronized {
+      if (!closed) {
+        closed = true
+        try {
+          active.channel.force(true)
+          (sealedSegments :+ active).foreach { _.close() }
+          index.clear()
+        }
+        finally {
+          unlock()
+        }
+      }
+    }
+  }
+
+  private def checkOpen() {
+    if (closed) throw new IllegalStateException("store is closed")
+  }
+
+  private def write(key: String, value: Array[Byte]) {
+    val keyBytes = key.getBytes(UTF8)
+    val valueLength = if (value == null) TOMBSTONE else value.length
+    val record = ByteBuffer.allocate(HEADER_BYTES + keyBytes.length + math.max(valueLength, 0))
+    record.putInt(0).putInt(keyBytes.length).putInt(valueLength).put(keyBytes)
+    if (value != null) record.put(value)
+    record.putInt(0, checksum(record.array, 4, record.capacity - 4))
+    record.flip()
+    val offset = active.append(record)
+    latest(key, Location(active, offset, keyBytes.length, valueLength))
+
+    if (active.size >= segmentBytes) {
+      active.seal()
+      sealedSegments += active
+      active = new Segment(active.number + 1)
+      if (garbageBytes * 2 > totalBytes) compact()
+    }
+  }
+
+  /**
+   * Makes a record, just written or read back while opening, the latest for its key.
+   */
+  private def latest(key: String, location: Location) {
+    val recordBytes = location.recordBytes
+    totalBytes += recordBytes
+    val previous = if (location.valueLength == TOMBSTONE) index.remove(key) else index.put(key, location)
+    previous foreach { garbageBytes += _.recordBytes }
+    if (location.valueLength == TOMBSTONE) garbageBytes += recordBytes
+  }
+
+  private def open() {
+    if (!directory.isDirectory && !directory.mkdirs()) throw new IOException("could not create " + directory)
+    lock()
+    try {
+      load()
+    }
+    catch {
+      case NonFatal(e) => {
+        (sealedSegments ++ Option(active)).foreach { _.close() }
+        unlock()
+        throw e
+      }
+    }
+  }
+
+  private def lock() {
+    val channel = new RandomAccessFile(new File(directory, LOCK_NAME), "rw").getChannel
+    directoryLock = try channel.tryLock() catch { case e: OverlappingFileLockException => null }
+    if (directoryLock == null) {
+      channel.close()
+      throw new IllegalStateException(directory + " is in use by another store")
+    }
+  }
+
+  private def unlock() {
+    directoryLock.release()
+    directoryLock.channel.close()
+  }
+
+  private def load() {
+    directory.listFiles.filter { _.getName.endsWith(COMPACTING) }.foreach { _.delete() }
+    val numbers = directory.list.collect { case SEGMENT_NAME(number) => number.toLong }.sorted
+    for (number <- numbers) {
+      val segment = new Segment(number)
+      scan(segment)
+      sealedSegments += segment
+    }
+    if (sealedSegments.isEmpty) {
+      active = new Segment(0)
+    } else {
+      active = sealedSegments.remove(sealedSegments.size - 1)
+    }
+    sealedSegments.foreach { _.seal() }
+  }
+
+  private def scan(segment: Segment) {
+    val size = segment.size
+    var offset = 0L
+    var intact = true
+    while (intact && offset + HEADER_BYTES <= size) {
+      val header = ByteBuffer.wrap(segment.read(offset, HEADER_BYTES))
+      val crc = header.getInt
+      val keyLength = header.getInt
+      val valueLength = header.getInt
+      val recordBytes = HEADER_BYTES.toLong + keyLength + math.max(valueLength, 0)
+      if (keyLength < 0 || valueLength < TOMBSTONE || offset + recordBytes > size) {
+        intact = false
+      } else {
+        val record = segment.read(offset, recordBytes.toInt)
+        if (checksum(record, 4, record.length - 4) != crc) {
+          intact = false
+        } else {
+          latest(new String(record, HEADER_BYTES, keyLength, UTF8), Location(segment, offset, keyLength, valueLength))
+          offset += recordBytes
+        }
+      }
+    }
+    // a torn write at the end of a segment; the records before it still stand
+    if (offset < size) segment.channel.truncate(offset)
+  }
+
+  private def checksum(bytes: Array[Byte], from: Int, length: Int): Int = {
+    val crc = new CRC32
+    crc.update(bytes, from, length)
+    crc.getValue.toInt
+  }
+}
+
+object SegmentStore {
+  final val DEFAULT_SEGMENT_BYTES: Long = 64L * 1024 * 1024
+
+  private final val HEADER_BYTES = 12
+
+  private final val TOMBSTONE = -1
+
+  private final val UTF8 = "UTF-8"
+
+  private final val COMPACTING = ".compacting"
+
+  private final val LOCK_NAME = "store.lock"
+
+  private val SEGMENT_NAME = """(\d{10})\.segment""".r
+
+  private def fileName(number: Long) = "%010d.segment".format(number)
+
+  /**
+   * Releases a mapping now rather than when the buffer is collected: through
+   * Unsafe.invokeCleaner on Java 9 and later, or the buffer's cleaner before that.
+   * Where neither is available, the mapping is left to the garbage collector.
+   */
+  private def unmap(buffer: MappedByteBuffer) {
+    try {
+      val unsafeClass = Class.forName("sun.misc.Unsafe")
+      val invokeCleaner = unsafeClass.getMethod("invokeCleaner", classOf[ByteBuffer])
+      val theUnsafe = unsafeClass.getDeclaredField("theUnsafe")
+      theUnsafe.setAccessible(true)
+      invokeCleaner.invoke(theUnsafe.get(null), buffer)
+    }
+    catch {
+      case e: NoSuchMethodException => {
+        try {
+          val cleanerMethod = buffer.getClass.getMethod("cleaner")
+          cleanerMethod.setAccessible(true)
+          val cleaner = cleanerMethod.invoke(buffer)
+          if (cleaner != null) cleaner.getClass.getMethod("clean").invoke(cleaner)
+        }
+        catch {
+          case NonFatal(e) =>
+        }
+      }
+      case NonFatal(e) =>
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package net.bhardy.braintree.scala.util
 
 import java.io.InputStream
+import java.io.StringReader
 import scala.collection.JavaConversions._
 
 import collection.mutable.Stack
@@ -27,9 +28,9 @@ trait Element extends NodeType {
 
 object SimpleNodeWrapper {
 
-  def parse(string: String): SimpleNodeWrapper = parse(Source.fromString(string))
+  def parse(string: String): SimpleNodeWrapper = StaxParser.parse(new StringReader(string))
 
-  def parse(stream: InputStream): SimpleNodeWrapper = parse(Source.fromInputStream(stream))
+  def parse(stream: InputStream): SimpleNodeWrapper = StaxParser.parse(stream)
 
   def parse(source: Source): SimpleNodeWrapper = parse(new XMLEventReader(source))
 
@@ -100,51 +101,43 @@ case class SimpleNodeWrapper(
                               content: List[NodeType] = Nil
                               ) extends NodeWrapper with Element with NodeType {
 
+  /**
+   * Element children, in document order.
+   */
+  private lazy val children: List[SimpleNodeWrapper] = content.collect { case x: SimpleNodeWrapper => x }
+
+  /**
+   * Element children grouped by name, built the first time a path steps through this node.
+   */
+  private lazy val childrenByName: Map[String, List[SimpleNodeWrapper]] = children.groupBy { _.name }
+
+  private def childrenMatching(step: String): List[SimpleNodeWrapper] = {
+    if ("*" == step) children else childrenByName.getOrElse(step, Nil)
+  }
+
   def findAll(expression: String): List[NodeWrapper] = {
-    val paths = expression.split("/")
-    val tokens = new ListBuffer[String]
-    tokens ++= paths
     val nodes = new ListBuffer[NodeWrapper]
-    findAll(tokens, nodes)
+    findAll(PathExpression.steps(expression), nodes)
     nodes.toList
   }
 
-  private def findAll(tokens: ListBuffer[String], nodes: ListBuffer[NodeWrapper]): Unit = {
-    if (tokens.isEmpty) nodes.add(this)
-    else {
-      val first: String = tokens.head
-      if ("." == first) findAll(tokens.tail, nodes)
-      for (node <- childNodes) {
-        if (("*" == first) || (first == node.name)) node.findAll(tokens.tail, nodes)
-      }
+  private def findAll(steps: List[String], nodes: ListBuffer[NodeWrapper]) {
+    steps match {
+      case Nil => nodes += this
+      case step :: rest => childrenMatching(step).foreach { _.findAll(rest, nodes) }
     }
   }
 
-  private def findOpt(tokens: List[String]): Option[SimpleNodeWrapper] = {
-    tokens match {
+  private def findOpt(steps: List[String]): Option[SimpleNodeWrapper] = {
+    steps match {
       case Nil => Some(this)
-      case first :: rest => {
-        if ("." == first) {
-          findOpt(rest)
-        } else {
-          childNodes.
-            find(node => (("*" == first) || (first == node.name))).
-            flatMap(node => node.findOpt(rest))
-        }
-      }
+      case step :: rest => childrenMatching(step).headOption.flatMap { _.findOpt(rest) }
     }
   }
 
   @deprecated // old behavior was null-based
-  private def find(tokens: List[String]): SimpleNodeWrapper = {
-    findOpt(tokens.toList).getOrElse(null)
-  }
-
-  @deprecated
   private def find(expression: String): SimpleNodeWrapper = {
-    val paths: Array[String] = expression.split("/")
-    val tokens = paths.toList
-    find(tokens)
+    findOpt(PathExpression.steps(expression)).getOrElse(null)
   }
 
   @deprecated
@@ -153,7 +146,7 @@ case class SimpleNodeWrapper(
   }
 
   def findFirstOpt(expression: String): Option[NodeWrapper] = {
-    Option(find(expression))
+    findOpt(PathExpression.steps(expression))
   }
 
   @deprecated
@@ -164,9 +157,7 @@ case class SimpleNodeWrapper(
   }
 
   def findStringOpt(expression: String): Option[String] = {
-    val node: SimpleNodeWrapper = find(expression)
-    if (node == null) None
-    else Option(node.stringValue)
+    findOpt(PathExpression.steps(expression)).flatMap { node => Option(node.stringValue) }
   }
 
   private def stringValue: String = {
@@ -183,16 +174,9 @@ case class SimpleNodeWrapper(
 
   def getElementName = name
 
-  private def childNodes: List[SimpleNodeWrapper] = {
-    content.flatMap {
-      case x: SimpleNodeWrapper => Some(x)
-      case _ => None
-    }
-  }
-
   def getFormParameters: Map[String, String] = {
     val pairs = for {
-      node <- childNodes
+      node <- children
       things <- node.buildParams("")
     } yield things
     pairs.toMap
@@ -200,7 +184,7 @@ case class SimpleNodeWrapper(
 
   def buildParams(prefix: String): List[(String, String)] = {
     val newPrefix = prefixWithName(prefix)
-    if (childNodes.isEmpty) {
+    if (children.isEmpty) {
       List((newPrefix, stringValue))
     }
     else {
@@ -210,7 +194,7 @@ case class SimpleNodeWrapper(
 
   def childNodeParamPairs(newPrefix: String): List[(String, String)] = {
     val bits = for {
-      childNode <- childNodes
+      childNode <- children
       childParams <- childNode.buildParams(newPrefix)
     } yield childParams
     bits.toList
@@ -0,0 +1,73 @@
+package net.bhardy.braintree.scala.util
+
+import java.util.concurrent.{ConcurrentHashMap, CountDownLatch}
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Shares one evaluation among concurrent callers with the same key: the first caller
+ * computes, and callers arriving while it does so wait for and get its result, or its
+ * exception. Nothing is kept once the computation finishes, so callers after it compute anew.
+ */
+class SingleFlight[K, V] {
+
+  private val inFlight = new ConcurrentHashMap[K, Flight]
+  private val calls = new AtomicLong
+  private val computed = new AtomicLong
+
+  def apply(key: K)(compute: => V): V = {
+    val flight = new Flight
+    val leader = inFlight.putIfAbsent(key, flight)
+    // counted once joined, so a caller counted while the leader computes is sure to share its result
+    calls.incrementAndGet
+    if (leader != null) {
+      leader.await()
+    } else {
+      computed.incrementAndGet
+      try {
+        val value = compute
+        inFlight.remove(key, flight)
+        flight.succeed(value)
+        value
+      }
+      catch {
+        case e: Throwable => {
+          inFlight.remove(key, flight)
+          flight.fail(e)
+          throw e
+        }
+      }
+    }
+  }
+
+  def stats = CoalescingStats(calls.get, computed.get)
+
+  private class Flight {
+    private val done = new CountDownLatch(1)
+    @volatile private var value: V = _
+    @volatile private var error: Throwable = null
+
+    def succeed(result: V) {
+      value = result
+      done.countDown()
+    }
+
+    def fail(e: Throwable) {
+      error = e
+      done.countDown()
+    }
+
+    def await(): V = {
+      done.await()
+      if (error != null) throw error
+      value
+    }
+  }
+}
+
+/**
+ * @param reads - read requests made by callers
+ * @param sent - read requests actually sent to the gateway; the rest shared another's response
+ */
+case class CoalescingStats(reads: Long, sent: Long) {
+  def coalesced = reads - sent
+}
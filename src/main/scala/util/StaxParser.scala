@@ -0,0 +1,132 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.InputStream
+import java.io.Reader
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLStreamConstants._
+import javax.xml.stream.XMLStreamException
+import javax.xml.stream.XMLStreamReader
+import collection.mutable.ArrayStack
+import collection.mutable.ListBuffer
+
+/**
+ * Builds {@link SimpleNodeWrapper} trees with a StAX pull parser, on the calling thread,
+ * straight from the response stream.
+ */
+object StaxParser {
+
+  private val inputFactory = {
+    val factory = XMLInputFactory.newInstance
+    // entity boundaries split text events, which keeps the text nodes the same as the
+    // scala.xml.pull based parser produced
+    factory.setProperty(XMLInputFactory.IS_COALESCING, false)
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
+    factory
+  }
+
+  def parse(stream: InputStream): SimpleNodeWrapper = parse(newReader(stream))
+
+  def parse(reader: Reader): SimpleNodeWrapper = parse(newReader(reader))
+
+  private[util] def newReader(stream: InputStream): XMLStreamReader = {
+    openReader(inputFactory.createXMLStreamReader(stream))
+  }
+
+  private[util] def newReader(reader: Reader): XMLStreamReader = {
+    openReader(inputFactory.createXMLStreamReader(reader))
+  }
+
+  private def openReader(create: => XMLStreamReader): XMLStreamReader = {
+    try {
+      create
+    }
+    catch {
+      case e: XMLStreamException => throw new IllegalArgumentException(e.getMessage, e)
+    }
+  }
+
+  /**
+   * Moves the reader on to the root element, closing it if there is none.
+   */
+  private[util] def toRoot(reader: XMLStreamReader): XMLStreamReader = {
+    try {
+      while (reader.getEventType != START_ELEMENT && reader.hasNext) {
+        reader.next
+      }
+      if (reader.getEventType != START_ELEMENT) {
+        reader.close()
+        throw new IllegalArgumentException("no root found")
+      }
+    }
+    catch {
+      case e: XMLStreamException => {
+        reader.close()
+        throw new IllegalArgumentException(e.getMessage, e)
+      }
+    }
+    reader
+  }
+
+  private class NodeBuilder(val name: String, val attributes: Map[String, String]) {
+    val content = new ListBuffer[NodeType]
+  }
+
+  /**
+   * Builds the tree from the reader's current event on, so a caller that has already
+   * read up to the root element can hand the rest of the document over. Closes the reader.
+   */
+  private[util] def parse(reader: XMLStreamReader): SimpleNodeWrapper = {
+    val stack = new ArrayStack[NodeBuilder]
+    var root: Option[SimpleNodeWrapper] = None
+
+    def handle(event: Int) {
+      event match {
+        case START_ELEMENT => {
+          stack.push(new NodeBuilder(reader.getLocalName, attributes(reader)))
+        }
+        case CHARACTERS | CDATA => {
+          if (!stack.isEmpty && !reader.isWhiteSpace) {
+            stack.top.content += TextNode(reader.getText)
+          }
+        }
+        case END_ELEMENT => {
+          val top = stack.pop
+          val built = SimpleNodeWrapper(top.name, top.attributes, top.content.toList)
+          if (stack.isEmpty) {
+            root = Some(built)
+          } else {
+            stack.top.content += built
+          }
+        }
+        case _ =>
+      }
+    }
+
+    try {
+      handle(reader.getEventType)
+      while (reader.hasNext) {
+        handle(reader.next)
+      }
+    }
+    catch {
+      case e: XMLStreamException => throw new IllegalArgumentException(e.getMessage, e)
+    }
+    finally {
+      reader.close()
+    }
+
+    root getOrElse {
+      throw new IllegalArgumentException("no root found")
+    }
+  }
+
+  private[util] def attributes(reader: XMLStreamReader): Map[String, String] = {
+    val count = reader.getAttributeCount
+    if (count == 0) {
+      Map.empty
+    } else {
+      (0 until count).map { i => reader.getAttributeLocalName(i) -> reader.getAttributeValue(i) }.toMap
+    }
+  }
+}
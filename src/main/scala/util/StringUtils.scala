@@ -2,6 +2,7 @@ package net.bhardy.braintree.scala.util
 
 import java.io.InputStream
 import java.io.InputStreamReader
+import java.util.concurrent.ConcurrentHashMap
 
 object StringUtils {
   def classToXMLName(klass: Class[_]): String = {
@@ -9,7 +10,7 @@ object StringUtils {
   }
 
   def dasherize(str: String): String = {
-    if (str == null) null else str.replaceAll("([a-z])([A-Z])", "$1-$2").replaceAll("_", "-").toLowerCase
+    if (str == null) null else dasherized(str)
   }
 
   def getFullPathOfFile(filename: String): String = {
@@ -37,10 +38,64 @@ object StringUtils {
   }
 
   def underscore(str: String): String = {
-    if (str == null) null else str.replaceAll("([a-z])([A-Z])", "$1_$2").replaceAll("-", "_").toLowerCase
+    if (str == null) null else underscored(str)
   }
 
   def join(delimiter: String, tokens: AnyRef*): String = {
     tokens.mkString(delimiter).trim
   }
+
+  /**
+   * Field and element names are a small fixed set, so conversions are remembered.
+   * Each cache stops growing at MAX_CACHED_NAMES in case of unexpected input.
+   */
+  private final val MAX_CACHED_NAMES = 2048
+
+  private val underscored = new NameCache('-', '_')
+
+  private val dasherized = new NameCache('_', '-')
+
+  /**
+   * Lower cases a name, putting separator between a lower case letter followed by an upper
+   * case one and in place of every other; "firstName" and "first-name" both become "first_name"
+   * for separator '_'.
+   */
+  private class NameCache(other: Char, separator: Char) extends (String => String) {
+    private val converted = new ConcurrentHashMap[String, String]
+
+    def apply(name: String): String = {
+      val cached = converted.get(name)
+      if (cached != null) {
+        cached
+      } else {
+        val result = convert(name)
+        if (converted.size < MAX_CACHED_NAMES) {
+          converted.putIfAbsent(name, result)
+        }
+        result
+      }
+    }
+
+    private def convert(name: String): String = {
+      val result = new java.lang.StringBuilder(name.length + 4)
+      var asciiOnly = true
+      var previous = ' '
+      var at = 0
+      while (at < name.length) {
+        val c = name.charAt(at)
+        if (c >= 'A' && c <= 'Z') {
+          if (previous >= 'a' && previous <= 'z') result.append(separator)
+          result.append((c + ('a' - 'A')).toChar)
+        } else if (c == other) {
+          result.append(separator)
+        } else {
+          if (c > 127) asciiOnly = false
+          result.append(c)
+        }
+        previous = c
+        at += 1
+      }
+      if (asciiOnly) result.toString else result.toString.toLowerCase
+    }
+  }
 }
\ No newline at end of file
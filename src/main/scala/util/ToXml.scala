@@ -6,4 +6,12 @@ import xml.Elem
  */
 trait ToXml {
   def toXml: Option[Elem]
+
+  /**
+   * Writes the same XML as toXml without building it first. Override where the XML can be
+   * streamed; by default the Elem is written.
+   */
+  def writeXml(writer: XmlWriter) {
+    toXml.foreach { writer.write }
+  }
 }
@@ -0,0 +1,140 @@
+package net.bhardy.braintree.scala.util
+
+import net.bhardy.braintree.scala.gw.Configuration
+import net.bhardy.braintree.scala.exceptions.UnexpectedException
+import javax.net.ssl._
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.net.HttpURLConnection
+import java.net.InetSocketAddress
+import java.net.URL
+
+/**
+ * {@link HttpTransport} over java.net.HttpURLConnection, talking to the real gateway.
+ */
+class UrlConnectionTransport(authorizationHeader: String, baseMerchantURL: String, certificateFilenames: List[String],
+                             version: String, poolSettings: ConnectionPoolSettings = ConnectionPoolSettings())
+  extends HttpTransport {
+
+  val connectionPool = new ConnectionPool(poolSettings)
+
+  private lazy val sslSocketFactory = SSLSocketFactories.forCertificates(certificateFilenames)
+
+  override def poolStats = Some(connectionPool.stats)
+
+  /**
+   * Loads the trusted certificates and completes a TLS handshake with the gateway, so the
+   * first real request neither builds the SSL context nor pays for a full handshake.
+   * Intended to be called once at application startup. Does nothing for plain http.
+   */
+  override def warmUp() {
+    val url = new URL(baseMerchantURL)
+    if ("https".equalsIgnoreCase(url.getProtocol)) {
+      val port = if (url.getPort == -1) url.getDefaultPort else url.getPort
+      try {
+        val socket = sslSocketFactory.createSocket().asInstanceOf[SSLSocket]
+        try {
+          socket.connect(new InetSocketAddress(url.getHost, port), poolSettings.connectTimeoutMillis)
+          socket.setSoTimeout(poolSettings.readTimeoutMillis)
+          socket.startHandshake()
+        }
+        finally {
+          socket.close()
+        }
+      }
+      catch {
+        case e: IOException => {
+          throw new UnexpectedException(e.getMessage, e)
+        }
+      }
+    }
+  }
+
+  def execute[T](request: HttpRequest)(handleResponse: HttpResponse => T): T = {
+    connectionPool.withConnection {
+      val connection = connectionSetup(request.method, request.path)
+      try {
+        request.body.foreach { writePostBody(connection) }
+        val statusCode = connection.getResponseCode
+        val stream = responseStream(connection, statusCode)
+        val response = new HttpResponse(statusCode, stream, Option(connection.getContentEncoding))
+        try {
+          handleResponse(response)
+        }
+        finally {
+          drain(stream)
+          response.close()
+          stream.close
+        }
+      }
+      catch {
+        case e: IOException => {
+          discardErrorResponse(connection)
+          throw e
+        }
+      }
+    }
+  }
+
+  def connectionSetup(requestMethod: Http.RequestMethod, url: String): HttpURLConnection = {
+    buildConnection(requestMethod, url) match {
+      case secureConnection: HttpsURLConnection => {
+        secureConnection.setSSLSocketFactory(sslSocketFactory)
+        secureConnection
+      }
+      case other => other
+    }
+  }
+
+  def writePostBody(connection: HttpURLConnection)(body: RequestBody) {
+    val out = connection.getOutputStream
+    body.writeTo(out)
+    out.close
+  }
+
+  private def responseStream(connection: HttpURLConnection, statusCode: Int): InputStream = {
+    val stream = if (statusCode >= 400) connection.getErrorStream else connection.getInputStream
+    Option(stream) getOrElse new ByteArrayInputStream(new Array[Byte](0))
+  }
+
+  /**
+   * Reads and discards whatever is left of a failed response so that the JDK hands the
+   * socket back to its keep-alive cache rather than closing it.
+   */
+  private def discardErrorResponse(connection: HttpURLConnection) {
+    try {
+      Option(connection.getErrorStream).foreach { stream =>
+        drain(stream)
+        stream.close
+      }
+    }
+    catch {
+      case e: IOException => // connection is unusable anyway, let the JDK close it
+    }
+  }
+
+  /**
+   * Reading a response to the end is what lets the JDK reuse its socket.
+   */
+  private def drain(stream: InputStream) {
+    val buffer = new Array[Byte](0x1000)
+    while (stream.read(buffer) >= 0) {}
+  }
+
+  private def buildConnection(requestMethod: Http.RequestMethod, urlString: String): HttpURLConnection = {
+    val url = new URL(baseMerchantURL + urlString)
+    val connection = url.openConnection.asInstanceOf[HttpURLConnection]
+    connection.setRequestMethod(requestMethod.toString)
+    connection.addRequestProperty("Accept", "application/xml")
+    connection.addRequestProperty("User-Agent", "Braintree Java " + version)
+    connection.addRequestProperty("X-ApiVersion", Configuration.apiVersion)
+    connection.addRequestProperty("Authorization", authorizationHeader)
+    connection.addRequestProperty("Accept-Encoding", "gzip")
+    connection.addRequestProperty("Content-Type", "application/xml")
+    connection.setDoOutput(true)
+    connection.setConnectTimeout(poolSettings.connectTimeoutMillis)
+    connection.setReadTimeout(poolSettings.readTimeoutMillis)
+    connection
+  }
+}
@@ -53,13 +53,54 @@ object XmlUtil {
           new UnprefixedAttribute("type", typeString, NoAttributes)
       } getOrElse NoAttributes
 
-      new Elem(null, xmlEscape(tagName), attributes, TopScope, true, content: _*)
+      new Elem(null, escape(tagName), attributes, TopScope, true, content: _*)
     }
+  }
+
+  /**
+   * Escapes the five XML special characters in one pass. Returns the input itself when
+   * there is nothing to escape.
+   */
+  def escape(input: String): String = {
+    if (!needsEscaping(input)) {
+      input
+    } else {
+      val escaped = new java.io.StringWriter(input.length + 16)
+      escape(input, escaped)
+      escaped.toString
+    }
+  }
+
+  private[util] def escape(input: String, out: java.io.Writer) {
+    var from = 0
+    var at = 0
+    while (at < input.length) {
+      val replacement = input.charAt(at) match {
+        case '&' => "&amp;"
+        case '<' => "&lt;"
+        case '>' => "&gt;"
+        case '\'' => "&apos;"
+        case '"' => "&quot;"
+        case _ => null
+      }
+      if (replacement != null) {
+        out.write(input, from, at - from)
+        out.write(replacement)
+        from = at + 1
+      }
+      at += 1
+    }
+    out.write(input, from, input.length - from)
+  }
 
-    // TODO this needs to begone.
-    private def xmlEscape(input: String): String = {
-      input.replaceAll("&", "&amp;").replaceAll("<", "&lt;").
-        replaceAll(">", "&gt;").replaceAll("'", "&apos;").replaceAll("\"", "&quot;")
+  private def needsEscaping(input: String): Boolean = {
+    var at = 0
+    while (at < input.length) {
+      input.charAt(at) match {
+        case '&' | '<' | '>' | '\'' | '"' => return true
+        case _ => at += 1
+      }
     }
+    false
   }
 }
@@ -0,0 +1,88 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.BufferedWriter
+import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.io.Writer
+import xml.{Atom, Elem, Node, Text}
+
+/**
+ * Writes request XML as UTF-8 straight to an OutputStream, escaping text as it goes,
+ * instead of building an Elem tree and then a String of it.
+ *
+ * <pre>
+ * val writer = new XmlWriter(out)
+ * writer.start("customer").element("first-name", "Jo").end("customer")
+ * writer.flush()
+ * </pre>
+ */
+class XmlWriter(out: OutputStream) {
+
+  private val chars: Writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"))
+
+  def start(name: String, typeAttribute: Option[String] = None): XmlWriter = {
+    chars.write('<')
+    escaped(name)
+    typeAttribute.foreach { attribute("type", _) }
+    chars.write('>')
+    this
+  }
+
+  def end(name: String): XmlWriter = {
+    chars.write("</")
+    escaped(name)
+    chars.write('>')
+    this
+  }
+
+  def text(value: String): XmlWriter = {
+    escaped(value)
+    this
+  }
+
+  /**
+   * An element holding just text, e.g. &lt;amount&gt;10.00&lt;/amount&gt;.
+   */
+  def element(name: String, value: String, typeAttribute: Option[String] = None): XmlWriter = {
+    start(name, typeAttribute).text(value).end(name)
+  }
+
+  /**
+   * Writes an existing scala.xml tree, for {@link ToXml}s that only build Elems.
+   */
+  def write(node: Node): XmlWriter = {
+    node match {
+      case elem: Elem => {
+        chars.write('<')
+        escaped(elem.label)
+        elem.attributes.foreach { meta => attribute(meta.key, meta.value.text) }
+        chars.write('>')
+        elem.child.foreach(write)
+        end(elem.label)
+      }
+      case text: Text => escaped(text.data)
+      case atom: Atom[_] => escaped(atom.data.toString)
+      case other => chars.write(other.toString)
+    }
+    this
+  }
+
+  /**
+   * Pushes everything written so far to the stream. Does not close it.
+   */
+  def flush() {
+    chars.flush()
+  }
+
+  private def attribute(name: String, value: String) {
+    chars.write(' ')
+    escaped(name)
+    chars.write("=\"")
+    escaped(value)
+    chars.write('"')
+  }
+
+  private def escaped(value: String) {
+    XmlUtil.escape(value, chars)
+  }
+}
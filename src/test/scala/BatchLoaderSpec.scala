@@ -0,0 +1,107 @@
+package net.bhardy.braintree.scala
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.exceptions.NotFoundException
+import net.bhardy.braintree.scala.testhelpers.ConcurrencyHelper._
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, Executors, ScheduledExecutorService, TimeUnit}
+import java.util.concurrent.TimeoutException
+import scala.collection.JavaConversions._
+import scala.concurrent.{Await, Future}
+import scala.concurrent.duration.Duration
+
+@RunWith(classOf[JUnitRunner])
+class BatchLoaderSpec extends FunSpec with MustMatchers {
+
+  /**
+   * Runs check against a loader that records the batches it fetches, shutting its threads down afterwards.
+   */
+  def withLoader(windowMillis: Long, maxBatch: Int,
+                 scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor,
+                 findTimeout: Duration = BatchLoader.DEFAULT_TIMEOUT)
+                (check: (BatchLoader[String], ConcurrentLinkedQueue[List[String]]) => Unit) {
+    try withThreads(8) { implicit executionContext =>
+      val batches = new ConcurrentLinkedQueue[List[String]]
+      val loader = new BatchLoader[String]({ ids =>
+        batches.add(ids)
+        ids.filter { _ != "missing" }.map { id => (id, "found-" + id) }.toMap
+      }, windowMillis, maxBatch, scheduler, findTimeout)
+      check(loader, batches)
+    } finally scheduler.shutdownNow()
+  }
+
+  val timeout = Duration("5 seconds")
+
+  describe("BatchLoader") {
+    it("answers lookups made within the window with one fetch") {
+      // the window cannot end while the timer thread is held, however slowly the callers arrive
+      val scheduler = Executors.newSingleThreadScheduledExecutor
+      val timerHeld = new CountDownLatch(1)
+      scheduler.execute(new Runnable { def run() { timerHeld.await(5, TimeUnit.SECONDS) } })
+      withLoader(1, 50, scheduler) { (loader, batches) =>
+        withThreads(20) { callers =>
+          val lookups = (1 to 20).toList.map { i => Future { loader.load("id" + (i % 10)) }(callers) }
+          val loaded = lookups.map { Await.result(_, timeout) }
+          timerHeld.countDown()
+          loaded.map { Await.result(_, timeout).get }.toSet must be === (0 until 10).map { "found-id" + _ }.toSet
+        }
+        batches.size must be === 1
+        batches.head.sorted must be === (0 until 10).map { "id" + _ }.toList
+      }
+    }
+
+    it("sends a batch as soon as it is full") {
+      withLoader(60000, 3) { (loader, batches) =>
+        val lookups = List("a", "b", "c").map { loader.load }
+        lookups.map { Await.result(_, timeout) } must be ===
+          List(Some("found-a"), Some("found-b"), Some("found-c"))
+        batches.toList must be === List(List("a", "b", "c"))
+      }
+    }
+
+    it("raises NotFoundException from find for ids not found") {
+      withLoader(1, 50) { (loader, batches) =>
+        intercept[NotFoundException] {
+          loader.find("missing")
+        }
+        intercept[NotFoundException] {
+          loader.find(" ")
+        }
+      }
+    }
+
+    it("gives up on find after the timeout") {
+      withLoader(60000, 50, findTimeout = Duration(50, "millis")) { (loader, batches) =>
+        intercept[TimeoutException] {
+          loader.find("a")
+        }
+        batches.isEmpty must be === true
+      }
+    }
+  }
+
+  describe("close") {
+    it("sends the pending batch at once") {
+      withLoader(60000, 50) { (loader, batches) =>
+        val pending = loader.load("a")
+        loader.close()
+        Await.result(pending, timeout) must be === Some("found-a")
+      }
+    }
+
+    it("refuses lookups made after it rather than leaving them waiting") {
+      withLoader(60000, 50) { (loader, batches) =>
+        loader.close()
+        intercept[IllegalStateException] {
+          Await.result(loader.load("a"), timeout)
+        }
+        intercept[IllegalStateException] {
+          loader.find("b")
+        }
+        batches.isEmpty must be === true
+      }
+    }
+  }
+}
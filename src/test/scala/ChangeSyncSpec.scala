@@ -0,0 +1,140 @@
+package net.bhardy.braintree.scala
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.search.{SearchSnapshot, TransactionSearchRequest}
+import net.bhardy.braintree.scala.testhelpers.ManualClock
+import net.bhardy.braintree.scala.util.{NodeWrapper, ValueDecoder, NodeWrapperFactory}
+import java.io.File
+import java.util.{Calendar, TimeZone}
+import scala.collection.mutable.ListBuffer
+
+@RunWith(classOf[JUnitRunner])
+class ChangeSyncSpec extends FunSpec with MustMatchers {
+
+  /**
+   * A record last changed at the given second, which every date field of a search matches.
+   */
+  private case class Record(id: String, at: Long) {
+    def updatedAt = calendar(at)
+  }
+
+  private def calendar(seconds: Long) = {
+    val calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"))
+    calendar.setTimeInMillis(seconds * 1000)
+    calendar
+  }
+
+  /**
+   * Records searchable by date, as ChangeSync searches them, counting the records fetched.
+   */
+  private class Records extends Pager[Record] {
+    val all = new ListBuffer[Record]
+    val fetched = new ListBuffer[String]
+
+    def searchIds(snapshot: SearchSnapshot): NodeWrapper = {
+      val range = snapshot.toXml.get.child.find { field => (field \ "min").nonEmpty }.get
+      val min = ValueDecoder.dateTime((range \ "min").text).getTimeInMillis / 1000
+      val max = ValueDecoder.dateTime((range \ "max").text).getTimeInMillis / 1000
+      val ids = all.filter { record => record.at >= min && record.at <= max }.map { _.id }
+      NodeWrapperFactory.create(<search-results>
+        <page-size>2</page-size>
+        <ids type="array">{ids.map { id => <item>{id}</item> }}</ids>
+      </search-results>.toString)
+    }
+
+    def getPage(ids: List[String]) = {
+      fetched ++= ids
+      ids.map { id => all.find { _.id == id }.get }
+    }
+  }
+
+  private def changeSync(records: Records, clock: ManualClock, store: SyncStateStore = new MemorySyncStateStore,
+                         fields: List[String] = List("created_at"), since: Option[Calendar] = None) = {
+    new ChangeSync[Record](new TransactionSearchRequest().snapshot, fields, records.searchIds, records,
+      { _.id }, { _.updatedAt }, store, 60, since, clock)
+  }
+
+  private def poll(sync: ChangeSync[Record]): List[String] = {
+    val found = new ListBuffer[String]
+    sync.poll { record => found += record.id }
+    found.toList
+  }
+
+  describe("poll") {
+    it("hands over everything on the first poll, then only what is new") {
+      val (records, clock) = (new Records, new ManualClock)
+      val sync = changeSync(records, clock)
+      records.all += Record("a", 100)
+      clock.millis = 1000 * 1000L
+      poll(sync) must be === List("a")
+
+      records.all += Record("b", 1500)
+      clock.millis = 2000 * 1000L
+      poll(sync) must be === List("b")
+      poll(sync) must be === Nil
+    }
+
+    it("starts the first poll from since when given") {
+      val (records, clock) = (new Records, new ManualClock(1000 * 1000L))
+      records.all ++= List(Record("old", 100), Record("new", 900))
+      poll(changeSync(records, clock, since = Some(calendar(500)))) must be === List("new")
+      records.fetched.toList must be === List("new")
+    }
+
+    it("does not hand over records found again in the overlap") {
+      val (records, clock) = (new Records, new ManualClock)
+      val sync = changeSync(records, clock)
+      records.all += Record("a", 990)
+      clock.millis = 1000 * 1000L
+      poll(sync) must be === List("a")
+
+      records.all += Record("b", 995)
+      clock.millis = 1100 * 1000L
+      poll(sync) must be === List("b")
+    }
+
+    it("hands over a record again when its version changes") {
+      val (records, clock) = (new Records, new ManualClock)
+      val sync = changeSync(records, clock)
+      records.all += Record("a", 990)
+      clock.millis = 1000 * 1000L
+      poll(sync)
+
+      records.all(0) = Record("a", 1050)
+      clock.millis = 1100 * 1000L
+      poll(sync) must be === List("a")
+    }
+
+    it("fetches a record found through several date fields once") {
+      val (records, clock) = (new Records, new ManualClock(1000 * 1000L))
+      records.all ++= List(Record("a", 100), Record("b", 200), Record("c", 300))
+      val sync = changeSync(records, clock, fields = List("created_at", "settled_at", "voided_at"))
+      poll(sync) must be === List("a", "b", "c")
+      records.fetched.toList must be === List("a", "b", "c")
+    }
+
+    it("keeps only the versions the next poll's overlap can find again") {
+      val (records, clock, store) = (new Records, new ManualClock(1000 * 1000L), new MemorySyncStateStore)
+      records.all ++= List(Record("a", 100), Record("b", 950))
+      poll(changeSync(records, clock, store)) must be === List("a", "b")
+      store.load.seen must be === Set(ChangeSync.version("b", calendar(950)))
+    }
+
+    it("keeps its state in a file between runs") {
+      val file = File.createTempFile("sync", ".state")
+      file.delete()
+      file.deleteOnExit()
+      val first = new Records
+      first.all += Record("a", 990)
+      poll(changeSync(first, new ManualClock(1000 * 1000L), new FileSyncStateStore(file))) must be === List("a")
+
+      val second = new Records
+      second.all ++= List(Record("a", 990), Record("b", 995))
+      poll(changeSync(second, new ManualClock(1100 * 1000L), new FileSyncStateStore(file))) must be === List("b")
+      new FileSyncStateStore(file).load.watermark must be === Some(1100000L)
+    }
+  }
+}
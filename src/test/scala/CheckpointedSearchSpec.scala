@@ -0,0 +1,82 @@
+package net.bhardy.braintree.scala
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.util.NodeWrapperFactory
+import java.io.File
+import java.util.concurrent.atomic.AtomicInteger
+import scala.collection.mutable.ListBuffer
+
+@RunWith(classOf[JUnitRunner])
+class CheckpointedSearchSpec extends FunSpec with MustMatchers {
+
+  def newCheckpoint: File = {
+    val checkpoint = File.createTempFile("search", ".checkpoint")
+    checkpoint.delete()
+    checkpoint.deleteOnExit()
+    checkpoint
+  }
+
+  /**
+   * Pages of "item-" + id, recording the ids of each page fetched.
+   */
+  class RecordingPager extends Pager[String] {
+    val fetched = new ListBuffer[List[String]]
+
+    def getPage(ids: List[String]) = {
+      fetched += ids
+      ids.map { "item-" + _ }
+    }
+  }
+
+  /**
+   * A search finding ids a to e, counting the searches made into searches.
+   */
+  def search(pager: Pager[String], checkpoint: File, searches: AtomicInteger, query: String = "<search/>") = {
+    new CheckpointedSearch[String](pager, checkpoint, query, {
+      searches.incrementAndGet
+      NodeWrapperFactory.create(<search-results>
+        <page-size>2</page-size>
+        <ids type="array"><item>a</item><item>b</item><item>c</item><item>d</item><item>e</item></ids>
+      </search-results>.toString)
+    })
+  }
+
+  describe("foreachPage") {
+    it("visits every page once and records completion") {
+      val searches = new AtomicInteger
+      val items = new ListBuffer[String]
+      val checkpointed = search(new RecordingPager, newCheckpoint, searches)
+      checkpointed.foreach { items += _ }
+      items.toList must be === List("item-a", "item-b", "item-c", "item-d", "item-e")
+      checkpointed.isComplete must be === true
+      searches.get must be === 1
+    }
+
+    it("resumes after the last completed page without searching again") {
+      val (pager, checkpoint, searches) = (new RecordingPager, newCheckpoint, new AtomicInteger)
+      intercept[IllegalStateException] {
+        search(pager, checkpoint, searches).foreachPage { page =>
+          if (page.head == "item-c") throw new IllegalStateException("stopped")
+        }
+      }
+      pager.fetched.clear()
+
+      val resumed = search(pager, checkpoint, searches)
+      resumed.completedPages must be === 1
+      resumed.foreachPage { page => }
+      pager.fetched.toList must be === List(List("c", "d"), List("e"))
+      searches.get must be === 1
+    }
+
+    it("refuses a checkpoint made for another search") {
+      val checkpoint = newCheckpoint
+      search(new RecordingPager, checkpoint, new AtomicInteger).foreachPage { page => }
+      intercept[IllegalArgumentException] {
+        search(new RecordingPager, checkpoint, new AtomicInteger, "<search><id><is>x</is></id></search>").ids
+      }
+    }
+  }
+}
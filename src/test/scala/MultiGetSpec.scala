@@ -0,0 +1,59 @@
+package net.bhardy.braintree.scala
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.testhelpers.ConcurrencyHelper._
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeoutException, TimeUnit}
+import scala.collection.JavaConversions._
+import scala.concurrent.duration.Duration
+
+@RunWith(classOf[JUnitRunner])
+class MultiGetSpec extends FunSpec with MustMatchers {
+
+  private val existing = (1 to 120).map { "id" + _ }.toSet
+
+  describe("MultiGet") {
+    it("looks ids up a page at a time and reports the ones not found") { withThreads(4) { implicit executionContext =>
+      val requested = new ConcurrentLinkedQueue[List[String]]
+      val ids = (1 to 130).map { "id" + _ }
+      val result = MultiGet(ids, { chunk: List[String] =>
+        requested.add(chunk)
+        chunk.filter(existing).map { _.toUpperCase }
+      }, { found: String => found.toLowerCase })
+
+      requested.map { _.size }.toList.sorted must be === List(30, 50, 50)
+      result.found.size must be === 120
+      result.found("id7") must be === "ID7"
+      result.missing must be === (121 to 130).map { "id" + _ }.toList
+    }}
+
+    it("asks for repeated ids once and reports blank ids as missing") { withThreads(4) { implicit executionContext =>
+      val requested = new ConcurrentLinkedQueue[String]
+      val result = MultiGet(List("id1", "id1", "", "id2"), { chunk: List[String] =>
+        requested.addAll(chunk)
+        chunk
+      }, { found: String => found })
+
+      requested.toList must be === List("id1", "id2")
+      result.missing must be === List("")
+    }}
+
+    it("makes no requests for no ids") { withThreads(4) { implicit executionContext =>
+      MultiGet[String](Nil, { chunk: List[String] => fail("no request expected") }, { found: String => found }) must be ===
+        MultiGetResult(Map.empty[String, String], Nil)
+    }}
+
+    it("gives up after the timeout") { withThreads(2) { implicit executionContext =>
+      val release = new CountDownLatch(1)
+      intercept[TimeoutException] {
+        MultiGet(List("id1"), { chunk: List[String] =>
+          release.await(5, TimeUnit.SECONDS)
+          chunk
+        }, { found: String => found }, Duration(50, "millis"))
+      }
+      release.countDown()
+    }}
+  }
+}
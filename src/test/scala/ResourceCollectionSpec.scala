@@ -4,8 +4,11 @@ import _root_.org.junit.runner.RunWith
 import _root_.org.scalatest.FunSpec
 import _root_.org.scalatest.junit.JUnitRunner
 import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.testhelpers.ConcurrencyHelper._
 import net.bhardy.braintree.scala.util.NodeWrapperFactory
 import scala.collection.JavaConversions._
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
 
 @RunWith(classOf[JUnitRunner])
 class ResourceCollectionSpec extends FunSpec with MustMatchers {
@@ -29,6 +32,80 @@ class ResourceCollectionSpec extends FunSpec with MustMatchers {
     }
   }
 
+  describe("prefetching") {
+    def collection(pager: Pager[String]) = new ResourceCollection[String](pager, NodeWrapperFactory.create(
+      <search-results>
+        <page-size>2</page-size>
+        <ids type="array"><item>0</item><item>1</item><item>2</item><item>3</item><item>4</item></ids>
+      </search-results>.toString))
+
+    it("delivers pages in order even when later pages arrive first") { withThreads(4) { implicit executionContext =>
+      val firstPageMayFinish = new CountDownLatch(1)
+      val pager = new Pager[String] {
+        def getPage(ids: List[String]) = {
+          if (ids.head == "0") firstPageMayFinish.await(5, TimeUnit.SECONDS) else firstPageMayFinish.countDown()
+          ids.map { s => values(Integer.parseInt(s)) }
+        }
+      }
+
+      collection(pager).prefetching(3).toList must be === values.toList
+    }}
+
+    it("keeps no more than the window of pages requested ahead") { withThreads(4) { implicit executionContext =>
+      val requested = new ConcurrentLinkedQueue[String]
+      val secondPageRequested = new CountDownLatch(1)
+      val pager = new Pager[String] {
+        def getPage(ids: List[String]) = {
+          requested.add(ids.head)
+          if (ids.head == "2") secondPageRequested.countDown()
+          ids.map { s => values(Integer.parseInt(s)) }
+        }
+      }
+
+      val iterator = collection(pager).prefetching(1).iterator
+      iterator.next must be === "a"
+      secondPageRequested.await(5, TimeUnit.SECONDS) must be === true
+      requested.toList must be === List("0", "2")
+      iterator.toList must be === List("b", "c", "d", "e")
+    }}
+
+    it("rethrows a failed page from the iterator") { withThreads(4) { implicit executionContext =>
+      val pages = new AtomicInteger
+      val pager = new Pager[String] {
+        def getPage(ids: List[String]) = {
+          if (pages.incrementAndGet == 2) throw new IllegalStateException("page failed")
+          ids.map { s => values(Integer.parseInt(s)) }
+        }
+      }
+
+      intercept[IllegalStateException] {
+        collection(pager).prefetching(2).toList
+      }
+    }}
+  }
+
+  describe("split") {
+    val collection = new ResourceCollection[String](new TestPager, NodeWrapperFactory.create(
+      <search-results>
+        <page-size>2</page-size>
+        <ids type="array"><item>0</item><item>1</item><item>2</item><item>3</item><item>4</item></ids>
+      </search-results>.toString))
+
+    it("divides the ids into runs of whole pages") {
+      val slices = collection.split(2)
+      slices.map { slice => (slice.from, slice.until) } must be === List((0, 2), (2, 5))
+      slices.map { _.getMaximumSize }.sum must be === 5
+    }
+
+    it("makes no more slices than pages") {
+      collection.split(10).map { _.toList } must be === List(List("a", "b"), List("c", "d"), List("e"))
+    }
+
+    it("gives the same results when the slices are worked through in parallel") {
+      collection.split(3).par.flatMap { _.toList }.toList must be === values.toList
+    }
+  }
+
   private val values = Array("a", "b", "c", "d", "e")
 
   private[braintree] class TestPager extends Pager[String] {
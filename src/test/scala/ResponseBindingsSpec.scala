@@ -0,0 +1,217 @@
+package net.bhardy.braintree.scala
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.util.BindingNodeWrapperFactory
+import net.bhardy.braintree.scala.util.BoundNodeWrapper
+import net.bhardy.braintree.scala.util.NodeWrapper
+import net.bhardy.braintree.scala.util.SimpleNodeWrapper
+import scala.collection.mutable.ListBuffer
+
+@RunWith(classOf[JUnitRunner])
+class ResponseBindingsSpec extends FunSpec with MustMatchers {
+
+  /**
+   * Answers from the tree, and records every lookup the bound node answers differently, or only
+   * by falling back to the tree because its binding lacks the path.
+   */
+  class Compared(tree: NodeWrapper, bound: NodeWrapper, factory: BindingNodeWrapperFactory, path: String,
+                 mismatches: ListBuffer[String]) extends NodeWrapper {
+
+    private def fromBound[T](expression: String)(lookup: => T): T = {
+      val unboundReads = factory.unboundReads
+      val found = lookup
+      if (factory.unboundReads > unboundReads) mismatches += path + expression + " is not bound"
+      found
+    }
+
+    private def compared(expression: String, fromTree: NodeWrapper, fromBound: NodeWrapper) = {
+      if ((fromTree == null) != (fromBound == null)) mismatches += path + expression
+      if (fromTree == null || fromBound == null) fromTree
+      else new Compared(fromTree, fromBound, factory, path + expression + "/", mismatches)
+    }
+
+    def findAll(expression: String) = {
+      val (fromTree, bounds) = (tree.findAll(expression), fromBound(expression) { bound.findAll(expression) })
+      if (fromTree.size != bounds.size) mismatches += path + expression
+      fromTree.zip(bounds).map { case (t, b) => compared(expression, t, b) }
+    }
+
+    def findFirst(expression: String) = {
+      compared(expression, tree.findFirst(expression), fromBound(expression) { bound.findFirst(expression) })
+    }
+
+    def findFirstOpt(expression: String) = Option(findFirst(expression))
+
+    def findString(expression: String) = {
+      val fromTree = tree.findString(expression)
+      if (fromTree != fromBound(expression) { bound.findString(expression) }) mismatches += path + expression
+      fromTree
+    }
+
+    def findStringOpt(expression: String) = Option(findString(expression))
+
+    def getElementName = {
+      if (tree.getElementName != bound.getElementName) mismatches += path + "getElementName"
+      tree.getElementName
+    }
+
+    def getFormParameters = tree.getFormParameters
+  }
+
+  def compare(xml: String)(make: NodeWrapper => Any) = {
+    val mismatches = new ListBuffer[String]
+    val factory = new BindingNodeWrapperFactory(ResponseBindings.roots)
+    make(new Compared(SimpleNodeWrapper.parse(xml), factory.create(xml), factory, "", mismatches))
+    mismatches.toList
+  }
+
+  val address = <address><id>a1</id><customer-id>c1</customer-id><first-name>Jo</first-name>
+    <company nil="true"/><postal-code>60622</postal-code><created-at type="datetime">2013-07-09T18:23:29Z</created-at>
+  </address>
+
+  val descriptor = <descriptor><name>co*product</name><phone nil="true"/></descriptor>
+
+  val creditCard = <credit-card><token>t1</token><bin>411111</bin><last-4>1111</last-4><card-type>Visa</card-type>
+    <default type="boolean">true</default><expiration-month>05</expiration-month><expiration-year>2020</expiration-year>
+    <country-of-issuance></country-of-issuance>
+    <billing-address><id>a1</id><postal-code>60622</postal-code></billing-address>
+    <subscriptions type="array"><subscription><id>s1</id><price>10.00</price><status>Active</status></subscription></subscriptions>
+  </credit-card>
+
+  val transaction = <transaction>
+    <id>tx1</id><amount>100.00</amount><status>settled</status><type>sale</type><recurring>false</recurring>
+    <created-at type="datetime">2013-07-09T18:23:29Z</created-at>
+    <custom-fields><store-me>yes</store-me><other>no</other></custom-fields>
+    <billing><first-name>Jo &amp; Co</first-name></billing>
+    <shipping></shipping>
+    {creditCard}
+    <customer><id>c1</id><email>jo@example.com</email><credit-cards type="array"/></customer>
+    {descriptor}
+    <disbursement-details><disbursement-date type="date">2013-07-10</disbursement-date><funds-held>false</funds-held></disbursement-details>
+    <subscription><id>s1</id><transactions type="array"><transaction><id>tx0</id><billing/><credit-card/><customer/><disbursement-details/><descriptor/><shipping/><subscription/></transaction></transactions></subscription>
+    <refund-ids type="array"><item>r1</item><item>r2</item></refund-ids>
+    <status-history type="array"><status-event><status>authorized</status><amount>100.00</amount></status-event></status-history>
+    <add-ons type="array"><add-on><id>a</id><quantity>2</quantity></add-on></add-ons>
+    <discounts type="array"><discount><id>d</id><amount>1.00</amount><never-expires>true</never-expires></discount></discounts>
+    <unbound><deeply><nested>ignored</nested></deeply></unbound>
+  </transaction>
+
+  val subscription = <subscription>
+    <id>s1</id><plan-id>p1</plan-id><price>10.00</price><status>Active</status><balance>0.00</balance>
+    <billing-day-of-month>9</billing-day-of-month><first-billing-date type="date">2013-07-09</first-billing-date>
+    <never-expires>true</never-expires><trial-period>false</trial-period><trial-duration-unit>month</trial-duration-unit>
+    <created-at type="datetime">2013-07-09T18:23:29Z</created-at>
+    {descriptor}
+    <add-ons type="array"><add-on><id>a</id><quantity>2</quantity><amount>5.00</amount><name>extra</name></add-on></add-ons>
+    <discounts type="array"><discount><id>d</id><number-of-billing-cycles>3</number-of-billing-cycles></discount></discounts>
+    <transactions type="array">{transaction}</transactions>
+  </subscription>
+
+  describe("nodeWrapperFactory") {
+    it("answers every lookup of a transaction like the tree") {
+      compare(transaction.toString) { node => new Transaction(node) } must be === Nil
+    }
+
+    it("answers every lookup of a subscription, with its modifications and transactions, like the tree") {
+      compare(subscription.toString) { node => new Subscription(node) } must be === Nil
+    }
+
+    it("answers every lookup of an address like the tree") {
+      compare(address.toString) { node => new Address(node) } must be === Nil
+    }
+
+    it("answers every lookup of a credit card like the tree") {
+      compare(creditCard.toString) { node => new CreditCard(node) } must be === Nil
+    }
+
+    it("answers every lookup of a search page like the tree") {
+      val page = <subscriptions type="array">{subscription}{subscription}</subscriptions>
+      compare(page.toString) { node => node.findAll("subscription").map { new Subscription(_) } } must be === Nil
+    }
+
+    it("reports a lookup the bindings lack") {
+      compare(transaction.toString) { node => node.findString("unbound/deeply/nested") } must be ===
+        List("unbound/deeply/nested is not bound")
+    }
+
+    it("answers every lookup of a customer like the tree") {
+      val customer = <customer><id>c1</id><first-name>Jo</first-name>
+        <custom-fields><store-me>yes</store-me></custom-fields>
+        <credit-cards type="array">{creditCard}</credit-cards>
+        <addresses type="array">{address}{address}</addresses>
+      </customer>
+      compare(customer.toString) { node => new Customer(node) } must be === Nil
+    }
+
+    it("answers every lookup of a verification like the tree") {
+      val verification = <verification><id>v1</id><status>verified</status>{creditCard}<billing><postal-code>1</postal-code></billing></verification>
+      compare(verification.toString) { node => new CreditCardVerification(node) } must be === Nil
+    }
+
+    it("binds search pages") {
+      val page = <credit-card-transactions type="array">{transaction}{transaction}</credit-card-transactions>
+      val found = ResponseBindings.nodeWrapperFactory.create(page.toString).findAll("transaction").map { new Transaction(_) }
+      found.map { _.id } must be === List("tx1", "tx1")
+      found.head.customFields must be === Map("store_me" -> "yes", "other" -> "no")
+      found.head.refundIds must be === List("r1", "r2")
+    }
+
+    it("answers a path its binding does not keep from the response, and counts it") {
+      val factory = new BindingNodeWrapperFactory(ResponseBindings.roots)
+      val node = factory.create(transaction.toString)
+      node.findString("id") must be === "tx1"
+      node.findString("processor-response-code") must be === null
+      factory.unboundReads must be === 0
+      node.findString("unbound/deeply/nested") must be === "ignored"
+      node.findFirst("unbound").findString("deeply/nested") must be === "ignored"
+      node.findFirst("credit-card").findString("unbound") must be === null
+      node.findAll("add-ons/add-on").head.findStringOpt("unbound") must be === None
+      node.findAll("discounts/discount").head.findAll("*").map { _.getElementName } must be ===
+        List("id", "amount", "never-expires")
+      factory.unboundReads must be === 5
+    }
+
+    it("answers unbound paths of a streamed response too") {
+      val factory = new BindingNodeWrapperFactory(ResponseBindings.roots)
+      val node = factory.create(new java.io.ByteArrayInputStream(transaction.toString.getBytes("UTF-8")))
+      node.findString("id") must be === "tx1"
+      node.findFirst("subscription").findAll("transactions/transaction").head.findString("unbound") must be === null
+      node.findString("unbound/deeply/nested") must be === "ignored"
+      factory.unboundReads must be === 2
+    }
+
+    it("leaves plans, which are not bound, to the tree") {
+      val plan = <plan><id>p1</id><add-ons type="array"><add-on><id>a</id></add-on></add-ons></plan>
+      ResponseBindings.nodeWrapperFactory.create(plan.toString) must be (SimpleNodeWrapper.parse(plan.toString))
+    }
+
+    it("gives the form parameters the tree gives") {
+      val customer = <customer><id>c1</id><first-name>Jo</first-name>
+        <addresses type="array">{address}</addresses>
+      </customer>
+      def bound(xml: String) = ResponseBindings.nodeWrapperFactory.create(xml)
+      bound(address.toString).getFormParameters must be === SimpleNodeWrapper.parse(address.toString).getFormParameters
+      bound(customer.toString).getFormParameters must be === SimpleNodeWrapper.parse(customer.toString).getFormParameters
+      bound(customer.toString).findFirst("addresses/address").getFormParameters must be ===
+        SimpleNodeWrapper.parse(address.toString).getFormParameters
+    }
+
+    it("materializes into a tree that answers a transaction's lookups alike") {
+      val mismatches = new ListBuffer[String]
+      val bound = ResponseBindings.nodeWrapperFactory.create(transaction.toString).asInstanceOf[BoundNodeWrapper]
+      new Transaction(new Compared(SimpleNodeWrapper.parse(transaction.toString), bound.materialize,
+        ResponseBindings.nodeWrapperFactory, "", mismatches))
+      mismatches.toList must be === Nil
+    }
+
+    it("falls back to the tree for other responses") {
+      val error = <api-error-response><params><id>x</id></params></api-error-response>
+      val node = ResponseBindings.nodeWrapperFactory.create(error.toString)
+      node must be (SimpleNodeWrapper.parse(error.toString))
+      node.isSuccess must be === false
+    }
+  }
+}
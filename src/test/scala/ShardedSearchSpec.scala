@@ -0,0 +1,116 @@
+package net.bhardy.braintree.scala
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.search.{SearchSnapshot, ShardRange, TransactionSearchRequest}
+import net.bhardy.braintree.scala.testhelpers.ConcurrencyHelper._
+import net.bhardy.braintree.scala.util.{NodeWrapper, NodeWrapperFactory}
+import java.util.{Calendar, TimeZone}
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeoutException, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+import scala.collection.JavaConversions._
+import scala.concurrent.duration.Duration
+import scala.math.BigDecimal
+
+@RunWith(classOf[JUnitRunner])
+class ShardedSearchSpec extends FunSpec with MustMatchers {
+
+  describe("ShardRange") {
+    it("divides into adjacent parts that do not overlap") {
+      val parts = ShardRange.numbers("amount", BigDecimal("0.00"), BigDecimal("1.00")).divide(3)
+      parts.map { part => (part.min, part.max) } must be === List((0, 32), (33, 66), (67, 100))
+    }
+
+    it("makes no more parts than steps") {
+      ShardRange.numbers("amount", BigDecimal(1), BigDecimal(2)).divide(5).size must be === 2
+    }
+
+    it("divides dates by the second") {
+      val start = Calendar.getInstance(TimeZone.getTimeZone("UTC"))
+      start.setTimeInMillis(0)
+      val end = start.clone.asInstanceOf[Calendar]
+      end.add(Calendar.MINUTE, 1)
+      val xml = new TransactionSearchRequest().snapshot.withRange(
+        new TransactionSearchRequest().createdAt.shardRange(start, end).divide(2).last).toXml.get
+      (xml \ "created_at" \ "min").text must be === "1970-01-01T00:00:30Z"
+      (xml \ "created_at" \ "max").text must be === "1970-01-01T00:01:00Z"
+    }
+  }
+
+  describe("ShardedSearch") {
+    val amounts = (1 to 40).toList
+
+    def searchIds(searches: AtomicInteger)(snapshot: SearchSnapshot): NodeWrapper = {
+      searches.incrementAndGet
+      val xml = snapshot.toXml.get
+      val min = (xml \ "amount" \ "min").text.toInt
+      val max = (xml \ "amount" \ "max").text.toInt
+      val ids = amounts.filter { amount => amount >= min && amount <= max }
+      NodeWrapperFactory.create(<search-results>
+        <page-size>2</page-size>
+        <ids type="array">{ids.map { id => <item>{id}</item> }}</ids>
+      </search-results>.toString)
+    }
+
+    val pager = { snapshot: SearchSnapshot =>
+      new Pager[String] {
+        def getPage(ids: List[String]) = ids.map { "t" + _ }
+      }
+    }
+
+    val query = new TransactionSearchRequest().status.in(Transactions.Status.SETTLED)
+    val range = query.amount.shardRange(1, 40)
+
+    it("divides shards that find too much until they fit") { withThreads(4) { implicit executionContext =>
+      val searches = new AtomicInteger
+      val search = new ShardedSearch[String](query.snapshot, range, 2, 5, searchIds(searches), pager)
+      search.shards.foreach { _.getMaximumSize must be <= 5 }
+      search.getMaximumSize must be === 40
+      searches.get must be > search.shards.size
+    }}
+
+    it("iterates every result once, in range order") { withThreads(4) { implicit executionContext =>
+      val search = new ShardedSearch[String](query.snapshot, range, 3, 4, searchIds(new AtomicInteger), pager)
+      search.iterator.toList must be === amounts.map { "t" + _ }
+    }}
+
+    it("fetches the first pages of the next shard while one is read") { withThreads(4) { implicit executionContext =>
+      val fetched = new ConcurrentLinkedQueue[String]
+      val recording = { snapshot: SearchSnapshot =>
+        new Pager[String] {
+          def getPage(ids: List[String]) = {
+            fetched.add(ids.head)
+            ids.map { "t" + _ }
+          }
+        }
+      }
+      val search = new ShardedSearch[String](query.snapshot, query.amount.shardRange(1, 8), 2, 10,
+        searchIds(new AtomicInteger), recording)
+      search.shards.map { _.getMaximumSize } must be === List(4, 4)
+      val iterator = search.iterator
+      iterator.next must be === "t1"
+      awaitCondition() { fetched.contains("5") && fetched.contains("7") }
+      iterator.toList must be === (2 to 8).toList.map { "t" + _ }
+    }}
+
+    it("gives up searching the shards after the timeout") { withThreads(2) { implicit executionContext =>
+      val release = new CountDownLatch(1)
+      val stalled = { snapshot: SearchSnapshot =>
+        release.await(5, TimeUnit.SECONDS)
+        searchIds(new AtomicInteger)(snapshot)
+      }
+      val search = new ShardedSearch[String](query.snapshot, range, 2, 50, stalled, pager, Duration(50, "millis"))
+      intercept[TimeoutException] { search.shards }
+      release.countDown()
+      search.getMaximumSize must be === 40
+    }}
+
+    it("keeps the query's other criteria in every shard") {
+      val xml = query.snapshot.withRange(range.divide(2).head).toXml.get
+      (xml \ "status") must be === (query.toXml.get \ "status")
+      (xml \ "amount" \ "max").text must be === "20"
+    }
+  }
+}
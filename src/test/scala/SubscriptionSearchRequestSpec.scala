@@ -8,10 +8,49 @@ import _root_.org.scalatest.matchers.MustMatchers
 import scala.math.BigDecimal
 import net.bhardy.braintree.scala.Subscriptions.Status
 import search.SubscriptionSearchRequest
+import net.bhardy.braintree.scala.util.{RequestBody, SimpleNodeWrapper}
 
 
 @RunWith(classOf[JUnitRunner])
 class SubscriptionSearchRequestSpec extends FunSpec with MustMatchers {
+  describe("writeXml") {
+    it("writes the same document as toXml") {
+      val request = new SubscriptionSearchRequest().daysPastDue.between(5, 7).id.is("s1").
+        status.in(Status.ACTIVE, Status.PAST_DUE).ids.in("a", "b")
+      val streamed = new String(RequestBody(request).toBytes, "UTF-8")
+      SimpleNodeWrapper.parse(streamed).getFormParameters must be ===
+        SimpleNodeWrapper.parse(request.toXml.get.toString).getFormParameters
+    }
+  }
+
+  describe("withIds") {
+    it("limits a snapshot to the ids without changing the request") {
+      val request = new SubscriptionSearchRequest().planId.is("gold").ids.in("a")
+      val page = request.withIds(List("b", "c")).toXml.get
+      (page \ "ids" \ "item").map { _.text } must be === List("b", "c")
+      (page \ "plan_id" \ "is").text must be === "gold"
+      (request.toXml.get \ "ids" \ "item").map { _.text } must be === List("a")
+    }
+
+    it("gives each page its own document when used from several threads") {
+      val snapshot = new SubscriptionSearchRequest().status.in(Status.ACTIVE).snapshot
+      val pages = (1 to 50).toList.par.map { page =>
+        (page, snapshot.withIds(List("id" + page)))
+      }.toList
+      pages.foreach { case (page, request) =>
+        (request.toXml.get \ "ids" \ "item").text must be === "id" + page
+      }
+      snapshot.multiValueCriteria.map { _._1 } must be === List("status")
+    }
+
+    it("is not affected by later changes to the request") {
+      val request = new SubscriptionSearchRequest().id.is("s1")
+      val snapshot = request.snapshot
+      request.planId.is("gold")
+      snapshot.toXml.get must be === <search><id><is>s1</is></id></search>
+    }
+  }
+
   describe("toXml") {
     it("daysPastDueXmlIsOperator") {
       val request = new SubscriptionSearchRequest().daysPastDue.is("42")
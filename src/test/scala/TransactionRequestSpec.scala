@@ -5,6 +5,7 @@ import _root_.org.junit.runner.RunWith
 import _root_.org.scalatest.FunSpec
 import _root_.org.scalatest.junit.JUnitRunner
 import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.util.{RequestBody, SimpleNodeWrapper}
 
 @RunWith(classOf[JUnitRunner])
 class TransactionRequestSpec extends FunSpec with MustMatchers {
@@ -42,4 +43,18 @@ class TransactionRequestSpec extends FunSpec with MustMatchers {
       (xml \ "deviceData").head.text must be === expectedBundleText
     }
   }
+
+  describe("writeXml") {
+    it("writes the same document as toXml") {
+      val request = new TransactionRequest().amount(BigDecimal("100.00")).orderId("o&1").
+        customField("store_me", "va<lue").
+        customer.firstName("J\u00fcrgen").lastName("O'Neil").done.
+        creditCard.number("4111111111111111").expirationDate("05/2020").done.
+        options.submitForSettlement(true).done
+
+      val streamed = new String(RequestBody(request).toBytes, "UTF-8")
+      SimpleNodeWrapper.parse(streamed).getFormParameters must be ===
+        SimpleNodeWrapper.parse(request.toXml.get.toString).getFormParameters
+    }
+  }
 }
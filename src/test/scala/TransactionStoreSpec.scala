@@ -0,0 +1,155 @@
+package net.bhardy.braintree.scala
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.search.TransactionSearchRequest
+import net.bhardy.braintree.scala.testhelpers.FileHelper.withTempDirectory
+import net.bhardy.braintree.scala.testhelpers.{InMemoryGateway, ManualClock}
+import net.bhardy.braintree.scala.util.{Http, InMemoryTransport}
+import net.bhardy.braintree.scala.util.InMemoryTransport.Reply
+import scala.collection.JavaConversions._
+
+@RunWith(classOf[JUnitRunner])
+class TransactionStoreSpec extends FunSpec with MustMatchers {
+
+  def transaction(id: String, status: String) = {
+    <transaction><id>{id}</id><status>{status}</status><amount>10.00</amount>
+      <custom-fields><note>{"caf\u00e9"}</note></custom-fields>
+      <billing/><credit-card/><customer/><descriptor/><disbursement-details/><shipping/><subscription/>
+    </transaction>
+  }
+
+  /**
+   * Serves transactions, and refunds of them.
+   */
+  private class TransactionTransport extends InMemoryTransport {
+    val transactions = resource("/transactions", "transaction", pageSize = 2)
+    route(Http.RequestMethod.POST, "/transactions/:id/refund") { call =>
+      Reply(transaction("refund-of-" + call.captures.head, "submitted_for_settlement"))
+    }
+  }
+
+  describe("find") {
+    it("serves a settled transaction from disk after the first find, across restarts") {
+      withTempDirectory("transactions") { directory =>
+        val (transport, store) = (new TransactionTransport, new TransactionStore(directory))
+        val gateway = InMemoryGateway(transport, transactionStore = Some(store))
+        transport.transactions.put("t1", transaction("t1", "settled"))
+        gateway.transaction.find("t1")
+        gateway.transaction.find("t1").status must be === Transactions.Status.SETTLED
+        transport.requestCount must be === 1
+        store.close()
+
+        val (restartedTransport, restartedStore) = (new TransactionTransport, new TransactionStore(directory))
+        val found = InMemoryGateway(restartedTransport, transactionStore = Some(restartedStore)).transaction.find("t1")
+        restartedTransport.requestCount must be === 0
+        found.amount must be === BigDecimal("10.00")
+        found.customFields must be === Map("note" -> "caf\u00e9")
+        restartedStore.stats.hits must be === 1
+        restartedStore.close()
+      }
+    }
+
+    it("always asks the gateway for transactions that may still change") {
+      withTempDirectory("transactions") { directory =>
+        val (transport, store) = (new TransactionTransport, new TransactionStore(directory))
+        val gateway = InMemoryGateway(transport, transactionStore = Some(store))
+        transport.transactions.put("t1", transaction("t1", "authorized"))
+        gateway.transaction.find("t1")
+        gateway.transaction.find("t1")
+        transport.requestCount must be === 2
+        store.stats.stored must be === 0
+        store.close()
+      }
+    }
+
+    it("asks again once the transaction is refunded") {
+      withTempDirectory("transactions") { directory =>
+        val (transport, store) = (new TransactionTransport, new TransactionStore(directory))
+        val gateway = InMemoryGateway(transport, transactionStore = Some(store))
+        transport.transactions.put("t1", transaction("t1", "settled"))
+        gateway.transaction.find("t1")
+        gateway.transaction.refund("t1")
+        gateway.transaction.find("t1")
+        transport.requestCount must be === 3
+        store.close()
+      }
+    }
+
+    it("asks again once the stored copy is older than the maximum age, even across restarts") {
+      withTempDirectory("transactions") { directory =>
+        val clock = new ManualClock
+        val (transport, store) = (new TransactionTransport, new TransactionStore(directory, maxAgeMillis = 1000, clock = clock))
+        val gateway = InMemoryGateway(transport, transactionStore = Some(store))
+        transport.transactions.put("t1", transaction("t1", "settled"))
+        gateway.transaction.find("t1")
+        clock.millis = 999
+        gateway.transaction.find("t1")
+        transport.requestCount must be === 1
+        store.close()
+
+        clock.millis = 1000
+        val (restartedTransport, restartedStore) =
+          (new TransactionTransport, new TransactionStore(directory, maxAgeMillis = 1000, clock = clock))
+        val restarted = InMemoryGateway(restartedTransport, transactionStore = Some(restartedStore))
+        restartedTransport.transactions.put("t1", transaction("t1", "settled"))
+        restarted.transaction.find("t1")
+        restartedTransport.requestCount must be === 1
+        restartedStore.stats must be === TransactionStoreStats(0, 1, 1, 1, restartedStore.stats.bytes)
+        restarted.transaction.find("t1")
+        restartedTransport.requestCount must be === 1
+        restartedStore.close()
+      }
+    }
+  }
+
+  describe("with response bindings") {
+    it("stores the bound transactions found and searched, and serves them across restarts") {
+      withTempDirectory("transactions") { directory =>
+        val (transport, store) = (new TransactionTransport, new TransactionStore(directory))
+        val gateway = InMemoryGateway(transport, ResponseBindings.nodeWrapperFactory, transactionStore = Some(store))
+        transport.transactions.put("t1", transaction("t1", "settled"))
+        transport.transactions.put("t2", transaction("t2", "voided"))
+        gateway.transaction.find("t1")
+        gateway.transaction.search(new TransactionSearchRequest).toList.map { _.id } must be === List("t1", "t2")
+        store.stats.stored must be === 2
+        store.close()
+
+        val (restartedTransport, restartedStore) = (new TransactionTransport, new TransactionStore(directory))
+        val restarted = InMemoryGateway(restartedTransport, ResponseBindings.nodeWrapperFactory,
+          transactionStore = Some(restartedStore))
+        val found = restarted.transaction.find("t2")
+        restartedTransport.requestCount must be === 0
+        found.status must be === Transactions.Status.VOIDED
+        found.amount must be === BigDecimal("10.00")
+        found.customFields must be === Map("note" -> "caf\u00e9")
+        restartedStore.close()
+      }
+    }
+  }
+
+  describe("search") {
+    it("fetches only the transactions not already stored, keeping the result order") {
+      withTempDirectory("transactions") { directory =>
+        val (transport, store) = (new TransactionTransport, new TransactionStore(directory))
+        val gateway = InMemoryGateway(transport, transactionStore = Some(store))
+        transport.transactions.put("t1", transaction("t1", "settled"))
+        transport.transactions.put("t2", transaction("t2", "authorized"))
+        transport.transactions.put("t3", transaction("t3", "voided"))
+        transport.transactions.put("t4", transaction("t4", "voided"))
+        gateway.transaction.find("t1")
+        gateway.transaction.find("t3")
+        gateway.transaction.find("t4")
+        val before = transport.requestCount
+
+        val found = gateway.transaction.search(new TransactionSearchRequest).toList
+        found.map { _.id } must be === List("t1", "t2", "t3", "t4")
+        // the ids, then a page for t2; t3 and t4 are all stored so need no page request
+        transport.requestCount - before must be === 2
+        store.close()
+      }
+    }
+  }
+}
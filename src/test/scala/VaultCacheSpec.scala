@@ -0,0 +1,132 @@
+package net.bhardy.braintree.scala
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.exceptions.NotFoundException
+import net.bhardy.braintree.scala.testhelpers.{InMemoryGateway, ManualClock}
+import net.bhardy.braintree.scala.util.{Http, InMemoryTransport, NodeWrapperFactory}
+import net.bhardy.braintree.scala.util.InMemoryTransport.Reply
+
+@RunWith(classOf[JUnitRunner])
+class VaultCacheSpec extends FunSpec with MustMatchers {
+
+  def card(token: String, customerId: String) = {
+    <credit-card><token>{token}</token><customer-id>{customerId}</customer-id><card-type>Visa</card-type></credit-card>
+  }
+
+  def customer(id: String, name: String, cardTokens: String*) = {
+    <customer><id>{id}</id><first-name>{name}</first-name>
+      <credit-cards type="array">{cardTokens.map { card(_, id) }}</credit-cards>
+    </customer>
+  }
+
+  /**
+   * Serves customers and cards, applying customer updates and card deletes to them.
+   */
+  private class VaultTransport extends InMemoryTransport {
+    val customers = resource("/customers", "customer")
+    val cards = resource("/payment_methods", "credit-card")
+    route(Http.RequestMethod.PUT, "/customers/:id") { call =>
+      val id = call.captures.head
+      customers.put(id, customer(id, call.body.get.findString("firstName")))
+      Reply(customers.get(id).get)
+    }
+    route(Http.RequestMethod.DELETE, "/payment_methods/:token") { call =>
+      cards.remove(call.captures.head)
+      Reply(200)
+    }
+  }
+
+  describe("find") {
+    it("asks the gateway once per record until the ttl passes") {
+      val (transport, clock) = (new VaultTransport, new ManualClock)
+      val cache = new VaultCache(VaultCacheSettings(), clock)
+      val gateway = InMemoryGateway(transport, vaultCache = Some(cache))
+      transport.customers.put("c1", customer("c1", "Jo"))
+      gateway.customer.find("c1")
+      gateway.customer.find("c1").firstName must be === "Jo"
+      transport.requestCount must be === 1
+
+      clock.millis = VaultCacheSettings().customerTtlMillis
+      gateway.customer.find("c1")
+      transport.requestCount must be === 2
+      cache.stats must be === VaultCacheStats(1, 2, 0, 0)
+    }
+
+    it("asks again after a not found unless negative caching is on") {
+      val transport = new VaultTransport
+      val gateway = InMemoryGateway(transport, vaultCache = Some(new VaultCache))
+      for (i <- 1 to 2) intercept[NotFoundException] { gateway.customer.find("gone") }
+      transport.requestCount must be === 2
+
+      val negative = new VaultTransport
+      val negativeGateway = InMemoryGateway(negative,
+        vaultCache = Some(new VaultCache(VaultCacheSettings(notFoundTtlMillis = 1000))))
+      for (i <- 1 to 2) intercept[NotFoundException] { negativeGateway.customer.find("gone") }
+      negative.requestCount must be === 1
+    }
+  }
+
+  describe("invalidation") {
+    it("drops a customer when it is updated") {
+      val transport = new VaultTransport
+      val gateway = InMemoryGateway(transport, vaultCache = Some(new VaultCache))
+      transport.customers.put("c1", customer("c1", "Jo"))
+      gateway.customer.find("c1")
+      gateway.customer.update("c1", new CustomerRequest().firstName("Renamed"))
+      gateway.customer.find("c1").firstName must be === "Renamed"
+    }
+
+    it("drops a deleted card and the customer holding it") {
+      val transport = new VaultTransport
+      val gateway = InMemoryGateway(transport, vaultCache = Some(new VaultCache))
+      transport.customers.put("c1", customer("c1", "Jo", "t1"))
+      transport.cards.put("t1", card("t1", "c1"))
+      gateway.customer.find("c1")
+      gateway.creditCard.find("t1")
+
+      gateway.creditCard.delete("t1")
+      transport.customers.put("c1", customer("c1", "Jo"))
+
+      intercept[NotFoundException] { gateway.creditCard.find("t1") }
+      gateway.customer.find("c1").creditCards must be === Nil
+    }
+
+    it("drops the paying card when a subscription webhook arrives") {
+      val transport = new VaultTransport
+      val cache = new VaultCache
+      val gateway = InMemoryGateway(transport, vaultCache = Some(cache))
+      transport.cards.put("t1", card("t1", "c1"))
+      gateway.creditCard.find("t1")
+      val notification = new WebhookNotification(NodeWrapperFactory.create(
+        "<notification><kind>subscription_went_past_due</kind><subject><subscription><id>s1</id>" +
+          "<payment-method-token>t1</payment-method-token></subscription></subject></notification>"))
+
+      cache.onWebhook(notification)
+      gateway.creditCard.find("t1")
+      transport.requestCount must be === 2
+    }
+  }
+
+  describe("bounds") {
+    it("evicts the least recently used customer, weighing in its cards") {
+      val transport = new VaultTransport
+      val cache = new VaultCache(VaultCacheSettings(maxWeight = 4))
+      val gateway = InMemoryGateway(transport, vaultCache = Some(cache))
+      transport.customers.put("c1", customer("c1", "Jo", "t1"))
+      transport.customers.put("c2", customer("c2", "Al", "t2"))
+      transport.customers.put("c3", customer("c3", "Mo"))
+      gateway.customer.find("c1")
+      gateway.customer.find("c2")
+      gateway.customer.find("c3")
+      cache.stats.evictions must be === 1
+
+      gateway.customer.find("c2")
+      transport.requestCount must be === 3
+      gateway.customer.find("c1")
+      transport.requestCount must be === 4
+    }
+  }
+}
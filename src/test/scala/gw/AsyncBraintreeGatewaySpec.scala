@@ -0,0 +1,134 @@
+package net.bhardy.braintree.scala.gw
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.CustomerRequest
+import net.bhardy.braintree.scala.exceptions.{NotFoundException, ServerException}
+import net.bhardy.braintree.scala.search.CustomerSearchRequest
+import net.bhardy.braintree.scala.testhelpers.InMemoryGateway
+import net.bhardy.braintree.scala.util.{Http, InMemoryTransport}
+import net.bhardy.braintree.scala.util.InMemoryTransport.Reply
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+import scala.collection.JavaConversions._
+import scala.concurrent.{Await, ExecutionContext}
+import scala.concurrent.duration.Duration
+
+@RunWith(classOf[JUnitRunner])
+class AsyncBraintreeGatewaySpec extends FunSpec with MustMatchers {
+
+  val timeout = Duration("5 seconds")
+
+  def customer(id: String, name: String) = <customer><id>{id}</id><first-name>{name}</first-name></customer>
+
+  /**
+   * Runs check against an async gateway over transport, shutting its threads down afterwards.
+   */
+  def withAsync(transport: InMemoryTransport)(check: AsyncBraintreeGateway => Unit) {
+    val async = AsyncBraintreeGateway(InMemoryGateway(transport))
+    try check(async) finally async.shutdown()
+  }
+
+  describe("finds") {
+    it("complete the Future with the record") {
+      val transport = new InMemoryTransport
+      transport.resource("/customers", "customer").put("c1", customer("c1", "Jo"))
+      withAsync(transport) { async =>
+        Await.result(async.customer.find("c1"), timeout).firstName must be === "Jo"
+      }
+    }
+
+    it("fail the Future with the exception the blocking gateway throws") {
+      val transport = new InMemoryTransport
+      transport.resource("/customers", "customer")
+      withAsync(transport) { async =>
+        intercept[NotFoundException] {
+          Await.result(async.customer.find("missing"), timeout)
+        }
+      }
+    }
+
+    it("do not hold the caller while the request is on the wire") {
+      val transport = new InMemoryTransport
+      val release = new CountDownLatch(1)
+      transport.route(Http.RequestMethod.GET, "/customers/:id") { call =>
+        release.await(5, TimeUnit.SECONDS)
+        Reply(customer(call.captures.head, "Late"))
+      }
+      withAsync(transport) { async =>
+        val pending = async.customer.find("c1")
+        pending.isCompleted must be === false
+        release.countDown()
+        Await.result(pending, timeout).firstName must be === "Late"
+      }
+    }
+
+    it("mark the round trip as blocking, so a context that can grow adds threads for it") {
+      val transport = new InMemoryTransport
+      val entered = new CountDownLatch(3)
+      transport.route(Http.RequestMethod.GET, "/customers/:id") { call =>
+        entered.countDown()
+        entered.await(5, TimeUnit.SECONDS)
+        Reply(customer(call.captures.head, "Together"))
+      }
+      val context = singleThreadedDefaultContext
+      try {
+        val async = new AsyncBraintreeGateway(InMemoryGateway(transport))(context)
+        val pending = List("c1", "c2", "c3").map { async.customer.find(_) }
+        pending.map { Await.result(_, timeout).firstName } must be === List("Together", "Together", "Together")
+        entered.getCount must be === 0
+      } finally context.shutdown()
+    }
+  }
+
+  /**
+   * A context built like the global one but with a single thread, which it only grows past for blocking work.
+   */
+  def singleThreadedDefaultContext = {
+    val properties = List("minThreads", "numThreads", "maxThreads").map { "scala.concurrent.context." + _ }
+    val saved = properties.map { name => name -> Option(System.getProperty(name)) }
+    properties.foreach { System.setProperty(_, "1") }
+    try ExecutionContext.fromExecutorService(null) finally saved.foreach {
+      case (name, Some(value)) => System.setProperty(name, value)
+      case (name, None) => System.clearProperty(name)
+    }
+  }
+
+  describe("writes") {
+    it("complete the Future with the Result") {
+      val transport = new InMemoryTransport
+      transport.route(Http.RequestMethod.PUT, "/customers/:id") { call =>
+        Reply(customer(call.captures.head, call.body.get.findString("firstName")))
+      }
+      withAsync(transport) { async =>
+        Await.result(async.customer.update("c1", new CustomerRequest().firstName("Renamed")), timeout) match {
+          case Success(updated) => updated.firstName must be === "Renamed"
+          case other => fail("expected success, got " + other)
+        }
+      }
+    }
+
+    it("fail the Future when the gateway errors") {
+      val transport = new InMemoryTransport
+      transport.route(Http.RequestMethod.POST, "/customers") { call => Reply(500) }
+      withAsync(transport) { async =>
+        intercept[ServerException] {
+          Await.result(async.customer.create(new CustomerRequest().firstName("Jo")), timeout)
+        }
+      }
+    }
+  }
+
+  describe("searches") {
+    it("complete the Future with a collection that pages as usual") {
+      val transport = new InMemoryTransport
+      val customers = transport.resource("/customers", "customer", pageSize = 2)
+      for (i <- 1 to 3) customers.put("c" + i, customer("c" + i, "Name " + i))
+      withAsync(transport) { async =>
+        val found = Await.result(async.customer.search(new CustomerSearchRequest), timeout)
+        found.map { _.id }.toList must be === List("c1", "c2", "c3")
+      }
+    }
+  }
+}
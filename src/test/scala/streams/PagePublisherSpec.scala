@@ -0,0 +1,101 @@
+package net.bhardy.braintree.scala.streams
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.Pager
+import _root_.org.reactivestreams.{Subscriber, Subscription}
+import scala.collection.mutable.ListBuffer
+import scala.concurrent.ExecutionContext
+
+@RunWith(classOf[JUnitRunner])
+class PagePublisherSpec extends FunSpec with MustMatchers {
+
+  private implicit val callingThread = new ExecutionContext {
+    def execute(runnable: Runnable) { runnable.run() }
+    def reportFailure(t: Throwable) { throw t }
+  }
+
+  private class RecordingPager(failOn: Option[String] = None) extends Pager[String] {
+    val fetched = new ListBuffer[String]
+
+    def getPage(ids: List[String]) = {
+      if (failOn == Some(ids.head)) throw new IllegalStateException("page failed")
+      fetched += ids.head
+      ids.map { "item-" + _ }
+    }
+  }
+
+  private class RecordingSubscriber extends Subscriber[String] {
+    var subscription: Subscription = null
+    val received = new ListBuffer[String]
+    var completed = false
+    var error: Option[Throwable] = None
+
+    def onSubscribe(s: Subscription) { subscription = s }
+    def onNext(item: String) { received += item }
+    def onError(e: Throwable) { error = Some(e) }
+    def onComplete() { completed = true }
+  }
+
+  private val ids = (0 until 5).map { _.toString }
+
+  describe("subscribe") {
+    it("fetches pages only as items are requested") {
+      val pager = new RecordingPager
+      val subscriber = new RecordingSubscriber
+      new PagePublisher(pager, ids, 2).subscribe(subscriber)
+      pager.fetched must be === Nil
+
+      subscriber.subscription.request(1)
+      subscriber.received must be === List("item-0")
+      pager.fetched must be === List("0")
+
+      subscriber.subscription.request(2)
+      subscriber.received must be === List("item-0", "item-1", "item-2")
+      pager.fetched must be === List("0", "2")
+      subscriber.completed must be === false
+
+      subscriber.subscription.request(Long.MaxValue)
+      subscriber.received.size must be === 5
+      subscriber.completed must be === true
+    }
+
+    it("stops fetching once cancelled") {
+      val pager = new RecordingPager
+      val subscriber = new RecordingSubscriber {
+        override def onNext(item: String) {
+          super.onNext(item)
+          subscription.cancel()
+        }
+      }
+      new PagePublisher(pager, ids, 2).subscribe(subscriber)
+      subscriber.subscription.request(10)
+      subscriber.received must be === List("item-0")
+      pager.fetched must be === List("0")
+      subscriber.completed must be === false
+    }
+
+    it("signals a failed page as an error") {
+      val subscriber = new RecordingSubscriber
+      new PagePublisher(new RecordingPager(Some("2")), ids, 2).subscribe(subscriber)
+      subscriber.subscription.request(10)
+      subscriber.received must be === List("item-0", "item-1")
+      subscriber.error.get.getMessage must be === "page failed"
+    }
+
+    it("rejects a non-positive request") {
+      val subscriber = new RecordingSubscriber
+      new PagePublisher(new RecordingPager, ids, 2).subscribe(subscriber)
+      subscriber.subscription.request(0)
+      subscriber.error.get.isInstanceOf[IllegalArgumentException] must be === true
+    }
+
+    it("completes an empty search without any request") {
+      val subscriber = new RecordingSubscriber
+      new PagePublisher(new RecordingPager, IndexedSeq.empty, 2).subscribe(subscriber)
+      subscriber.completed must be === true
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package net.bhardy.braintree.scala.testhelpers
+
+import java.util.concurrent.{Executors, TimeUnit}
+import scala.concurrent.ExecutionContext
+
+/**
+ * Helpers for specs that run work on other threads.
+ */
+object ConcurrencyHelper {
+
+  /**
+   * Runs body with an execution context over a pool of threads, shut down once body returns.
+   */
+  def withThreads[T](threads: Int)(body: ExecutionContext => T): T = {
+    val pool = Executors.newFixedThreadPool(threads)
+    try body(ExecutionContext.fromExecutorService(pool)) finally {
+      pool.shutdownNow()
+      pool.awaitTermination(5, TimeUnit.SECONDS)
+    }
+  }
+
+  /**
+   * Waits for another thread to make condition true, failing after timeoutMillis.
+   */
+  def awaitCondition(timeoutMillis: Long = 5000)(condition: => Boolean) {
+    val deadline = System.currentTimeMillis + timeoutMillis
+    while (!condition) {
+      if (System.currentTimeMillis > deadline) throw new AssertionError("condition not met in " + timeoutMillis + "ms")
+      Thread.`yield`()
+    }
+  }
+}
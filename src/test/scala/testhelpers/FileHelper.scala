@@ -0,0 +1,24 @@
+package net.bhardy.braintree.scala.testhelpers
+
+import java.io.File
+
+/**
+ * Helpers for specs that need somewhere on disk to work.
+ */
+object FileHelper {
+
+  /**
+   * Runs body with a new empty directory, deleted with everything in it once body returns.
+   */
+  def withTempDirectory[T](prefix: String)(body: File => T): T = {
+    val directory = File.createTempFile(prefix, "")
+    directory.delete()
+    directory.mkdirs()
+    try body(directory) finally delete(directory)
+  }
+
+  def delete(file: File) {
+    Option(file.listFiles).foreach { _.foreach(delete) }
+    file.delete()
+  }
+}
@@ -0,0 +1,19 @@
+package net.bhardy.braintree.scala.testhelpers
+
+import net.bhardy.braintree.scala.{Environment, TransactionStore, VaultCache}
+import net.bhardy.braintree.scala.gw.BraintreeGateway
+import net.bhardy.braintree.scala.util.{InMemoryTransport, NodeWrapperFactory}
+
+/**
+ * Sandbox gateways whose requests are answered by an {@link InMemoryTransport}.
+ */
+object InMemoryGateway {
+
+  def apply(transport: InMemoryTransport, nodeWrapperFactory: NodeWrapperFactory = NodeWrapperFactory,
+            vaultCache: Option[VaultCache] = None,
+            transactionStore: Option[TransactionStore] = None): BraintreeGateway = {
+    new BraintreeGateway(Environment.SANDBOX, "merchant_id", "public_key", "private_key",
+      transport = Some(transport), nodeWrapperFactory = nodeWrapperFactory,
+      vaultCache = vaultCache, transactionStore = transactionStore)
+  }
+}
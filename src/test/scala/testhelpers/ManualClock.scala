@@ -0,0 +1,10 @@
+package net.bhardy.braintree.scala.testhelpers
+
+/**
+ * A clock that only moves when a spec sets it, for the caches and syncs that take a clock
+ * function.
+ */
+class ManualClock(var millis: Long = 0L) extends (() => Long) {
+
+  def apply(): Long = millis
+}
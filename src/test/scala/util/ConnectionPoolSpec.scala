@@ -0,0 +1,87 @@
+package net.bhardy.braintree.scala.util
+
+import net.bhardy.braintree.scala.exceptions.UnexpectedException
+import java.util.concurrent.CountDownLatch
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.matchers.MustMatchers
+
+@RunWith(classOf[JUnitRunner])
+class ConnectionPoolSpec extends FunSpec with MustMatchers {
+
+  describe("withConnection") {
+    it("returns the block's value and counts the lease") {
+      val pool = new ConnectionPool(ConnectionPoolSettings(maxConnectionsPerRoute = 2))
+      pool.withConnection { "done" } must be === "done"
+      val stats = pool.stats
+      stats.totalLeases must be === 1
+      stats.leased must be === 0
+      stats.peakLeased must be === 1
+      stats.available must be === 2
+    }
+
+    it("hands the connection back when the block throws") {
+      val pool = new ConnectionPool(ConnectionPoolSettings(maxConnectionsPerRoute = 1))
+      intercept[IllegalStateException] {
+        pool.withConnection { throw new IllegalStateException }
+      }
+      pool.stats.leased must be === 0
+      pool.withConnection { "again" } must be === "again"
+    }
+
+    it("gives up once the acquire timeout passes") {
+      val pool = new ConnectionPool(ConnectionPoolSettings(maxConnectionsPerRoute = 1, acquireTimeoutMillis = 10))
+      val holding = new CountDownLatch(1)
+      val finish = new CountDownLatch(1)
+      val holder = new Thread(new Runnable {
+        def run() {
+          pool.withConnection {
+            holding.countDown()
+            finish.await()
+          }
+        }
+      })
+      holder.start()
+      holding.await()
+      try {
+        intercept[UnexpectedException] {
+          pool.withConnection { "never" }
+        }
+        pool.stats.acquireTimeouts must be === 1
+        pool.stats.leased must be === 1
+      }
+      finally {
+        finish.countDown()
+        holder.join()
+      }
+    }
+  }
+
+  describe("widenKeepAliveCache") {
+    def withProperty(value: Option[String])(check: => Unit) {
+      val saved = Option(System.getProperty("http.maxConnections"))
+      def set(v: Option[String]) {
+        v.map { System.setProperty("http.maxConnections", _) } getOrElse System.clearProperty("http.maxConnections")
+      }
+      set(value)
+      try check finally set(saved)
+    }
+
+    it("is not applied by creating a pool") {
+      withProperty(None) {
+        new ConnectionPool(ConnectionPoolSettings(maxConnectionsPerRoute = 50))
+        System.getProperty("http.maxConnections") must be === null
+      }
+    }
+
+    it("raises the JDK limit but never lowers it") {
+      withProperty(Some("8")) {
+        ConnectionPool.widenKeepAliveCache(20)
+        System.getProperty("http.maxConnections") must be === "20"
+        ConnectionPool.widenKeepAliveCache(10)
+        System.getProperty("http.maxConnections") must be === "20"
+      }
+    }
+  }
+}
@@ -55,6 +55,11 @@ class EnumUtilsSpec extends FunSpec with MustMatchers {
         EnumUtils.findByNameOpt(classOf[Type])(Some("saLE")) must be === Transactions.Type.SALE
       }
 
+      it("maps spaces to underscores") {
+        EnumUtils.findByNameOpt(classOf[Status])(Some("submitted for settlement")) must be ===
+          Transactions.Status.SUBMITTED_FOR_SETTLEMENT
+      }
+
       it("defaults to UNRECOGNIZED if name does not match") {
         EnumUtils.findByNameOpt(classOf[Status])(Some("blah")) must be === Transactions.Status.UNRECOGNIZED
         EnumUtils.findByNameOpt(classOf[Type])(Some("blah")) must be === Transactions.Type.UNRECOGNIZED
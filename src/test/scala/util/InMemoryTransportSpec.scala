@@ -0,0 +1,78 @@
+package net.bhardy.braintree.scala.util
+
+import net.bhardy.braintree.scala.{CustomerRequest, Environment}
+import net.bhardy.braintree.scala.exceptions.NotFoundException
+import net.bhardy.braintree.scala.gw.{BraintreeGateway, Success}
+import net.bhardy.braintree.scala.util.InMemoryTransport.Reply
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.matchers.MustMatchers
+import scala.collection.JavaConversions._
+
+@RunWith(classOf[JUnitRunner])
+class InMemoryTransportSpec extends FunSpec with MustMatchers {
+
+  def customer(id: String) = <customer><id>{id}</id><first-name>Name {id}</first-name></customer>
+
+  def gatewayWith(transport: InMemoryTransport) = {
+    new BraintreeGateway(Environment.SANDBOX, "merchant_id", "public_key", "private_key", transport)
+  }
+
+  describe("resource") {
+    it("serves finds by id") {
+      val transport = new InMemoryTransport
+      transport.resource("/customers", "customer").put("c1", customer("c1"))
+
+      gatewayWith(transport).customer.find("c1").firstName must be === "Name c1"
+    }
+
+    it("answers unknown ids with not found") {
+      val transport = new InMemoryTransport
+      transport.resource("/customers", "customer")
+
+      intercept[NotFoundException] {
+        gatewayWith(transport).customer.find("missing")
+      }
+    }
+
+    it("pages search results through advanced_search") {
+      val transport = new InMemoryTransport
+      val customers = transport.resource("/customers", "customer", pageSize = 2)
+      for (i <- 1 to 5) customers.put("c" + i, customer("c" + i))
+
+      val found = gatewayWith(transport).customer.all.toList
+
+      found.map { _.id } must be === List("c1", "c2", "c3", "c4", "c5")
+      transport.requestCount must be === 4
+    }
+  }
+
+  describe("route") {
+    it("passes captured path segments and the request body to the handler") {
+      val transport = new InMemoryTransport
+      transport.route(Http.RequestMethod.PUT, "/customers/:id") { call =>
+        Reply(<customer><id>{call.captures.head}</id><first-name>{call.body.get.findString("firstName")}</first-name></customer>)
+      }
+
+      val result = gatewayWith(transport).customer.update("c9", new CustomerRequest().firstName("Renamed"))
+
+      result match {
+        case Success(updated) => {
+          updated.id must be === "c9"
+          updated.firstName must be === "Renamed"
+        }
+        case other => fail("expected success but got " + other)
+      }
+    }
+
+    it("hands back non-success status codes") {
+      val transport = new InMemoryTransport
+      transport.route(Http.RequestMethod.GET, "/plans") { call => Reply(500) }
+
+      intercept[Exception] {
+        gatewayWith(transport).plan.all
+      }.getClass.getSimpleName must be === "ServerException"
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package net.bhardy.braintree.scala.util
+
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.matchers.MustMatchers
+
+@RunWith(classOf[JUnitRunner])
+class LazyNodeWrapperSpec extends FunSpec with MustMatchers {
+
+  val xml = <customer>
+    <id>c1</id>
+    <first-name>Tom &amp; Jerry</first-name>
+    <company nil="true"/>
+    <credit-cards type="array">
+      <credit-card>
+        <token>t1</token>
+        <billing-address><postal-code>60622</postal-code></billing-address>
+      </credit-card>
+      <credit-card>
+        <token>t2</token>
+        <billing-address><postal-code>60607</postal-code></billing-address>
+      </credit-card>
+    </credit-cards>
+    <addresses type="array"/>
+    <custom-fields><store-me>x</store-me><other>y</other></custom-fields>
+  </customer>.toString
+
+  describe("find") {
+    it("answers like SimpleNodeWrapper") {
+      val simple = SimpleNodeWrapper.parse(xml)
+      val lazyNode = LazyNodeWrapper.parse(xml)
+
+      for (path <- List("id", "first-name", "company", "missing", "credit-cards/credit-card/token",
+        "credit-cards/credit-card/billing-address/postal-code", ".", "addresses")) {
+        lazyNode.findStringOpt(path) must be === simple.findStringOpt(path)
+      }
+      lazyNode.findAllStrings("credit-cards/*/token") must be === List("t1", "t2")
+      lazyNode.findAllStrings("credit-cards/credit-card/billing-address/postal-code") must be === List("60622", "60607")
+      lazyNode.findAll("addresses/address") must be('empty)
+      lazyNode.findMapOpt("custom-fields/*") must be === simple.findMapOpt("custom-fields/*")
+    }
+
+    it("finds nested nodes") {
+      val card = LazyNodeWrapper.parse(xml).findAll("credit-cards/credit-card")(1)
+      card.getElementName must be === "credit-card"
+      card.findFirstOpt("billing-address").flatMap { _.findStringOpt("postal-code") } must be === Some("60607")
+    }
+  }
+
+  describe("materialize") {
+    it("builds the same tree as SimpleNodeWrapper") {
+      LazyNodeWrapper.parse(xml).materialize must be === SimpleNodeWrapper.parse(xml)
+    }
+  }
+
+  it("rejects malformed documents") {
+    intercept[IllegalArgumentException] {
+      LazyNodeWrapper.parse("<customer><id>")
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package net.bhardy.braintree.scala.util
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+
+@RunWith(classOf[JUnitRunner])
+class LruCacheSpec extends FunSpec with MustMatchers {
+
+  def weighted(maxEntries: Int, maxWeight: Long) = new LruCache[String, String](maxEntries, maxWeight, { _.length.toLong })
+
+  describe("put") {
+    it("drops the least recently used entry once full") {
+      val cache = weighted(2, 100)
+      cache.put("a", "1")
+      cache.put("b", "2")
+      cache.get("a")
+      cache.put("c", "3")
+      cache.get("a") must be === Some("1")
+      cache.get("b") must be === None
+      cache.evicted must be === 1
+    }
+
+    it("drops entries until the weights fit") {
+      val cache = weighted(10, 5)
+      cache.put("a", "12")
+      cache.put("b", "34")
+      cache.put("c", "567")
+      cache.get("a") must be === None
+      cache.weight must be === 5
+      cache.evicted must be === 1
+    }
+
+    it("keeps an entry heavier than maxWeight out without evicting the others") {
+      val cache = weighted(10, 5)
+      cache.put("a", "12")
+      cache.put("b", "34")
+      cache.put("c", "123456")
+      cache.get("c") must be === None
+      cache.size must be === 2
+      cache.weight must be === 4
+      cache.evicted must be === 0
+    }
+
+    it("removes the value before an entry too heavy to keep") {
+      val cache = weighted(10, 5)
+      cache.put("a", "12")
+      cache.put("a", "123456")
+      cache.get("a") must be === None
+      cache.weight must be === 0
+    }
+  }
+
+  describe("removeWhere") {
+    it("removes the matching entries and their weight") {
+      val cache = weighted(10, 100)
+      cache.put("a", "12")
+      cache.put("b", "345")
+      cache.removeWhere { (key, value) => value.startsWith("3") }
+      cache.get("b") must be === None
+      cache.weight must be === 2
+    }
+  }
+}
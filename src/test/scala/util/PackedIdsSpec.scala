@@ -0,0 +1,39 @@
+package net.bhardy.braintree.scala.util
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+
+@RunWith(classOf[JUnitRunner])
+class PackedIdsSpec extends FunSpec with MustMatchers {
+  private val ids = (0 until 1000).map { i => Integer.toString(i * 7919, 36) }
+
+  describe("PackedIds") {
+    it("reads back the ids in order") {
+      val packed = PackedIds(ids)
+      packed.length must be === 1000
+      packed.toList must be === ids.toList
+      packed.slice(10, 13) must be === ids.slice(10, 13)
+      packed.isMapped must be === false
+    }
+
+    it("keeps non-ASCII and empty ids intact") {
+      val odd = List("caf\u00e9", "", "\u4e2d\u6587", "plain")
+      PackedIds(odd).toList must be === odd
+    }
+
+    it("spills to a mapped file past the threshold") {
+      val packed = PackedIds(ids, spillThreshold = 100)
+      packed.isMapped must be === true
+      packed.toList must be === ids.toList
+      packed.arenaSize must be === ids.map { _.length }.sum
+    }
+
+    it("rejects indexes outside the ids") {
+      intercept[IndexOutOfBoundsException] {
+        PackedIds(List("a"))(1)
+      }
+    }
+  }
+}
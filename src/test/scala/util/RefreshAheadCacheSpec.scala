@@ -0,0 +1,152 @@
+package net.bhardy.braintree.scala.util
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.testhelpers.ManualClock
+import java.util.concurrent.atomic.AtomicInteger
+import scala.concurrent.ExecutionContext
+
+@RunWith(classOf[JUnitRunner])
+class RefreshAheadCacheSpec extends FunSpec with MustMatchers {
+
+  private implicit val callingThread = new ExecutionContext {
+    def execute(runnable: Runnable) { runnable.run() }
+    def reportFailure(t: Throwable) { throw t }
+  }
+
+  /**
+   * Loads "v1", "v2" and so on, or fails while failing is set, calling during before each load.
+   */
+  class Source extends (() => String) {
+    @volatile var failing = false
+    @volatile var during: () => Unit = { () => }
+    val calls = new AtomicInteger
+    val loads = new AtomicInteger
+
+    def apply() = {
+      calls.incrementAndGet
+      during()
+      if (failing) throw new IllegalStateException("down")
+      "v" + loads.incrementAndGet
+    }
+  }
+
+  def cacheOf(source: Source, clock: ManualClock, maxStaleMillis: Long = 10000) = {
+    new RefreshAheadCache(source, 1000, 200, 100, maxStaleMillis, clock)
+  }
+
+  describe("get") {
+    it("loads once and answers from the cache until the refresh window") {
+      val clock = new ManualClock
+      val cache = cacheOf(new Source, clock)
+      cache.get must be === "v1"
+      clock.millis = 799
+      cache.get must be === "v1"
+      cache.stats must be === CacheStats(1, 1, 0, 0, 0)
+    }
+
+    it("refreshes in the background near expiry, still answering with the cached value") {
+      val clock = new ManualClock
+      val cache = cacheOf(new Source, clock)
+      cache.get
+      clock.millis = 900
+      cache.get must be === "v1"
+      cache.stats.refreshes must be === 1
+      clock.millis = 1500
+      cache.get must be === "v2"
+    }
+
+    it("answers with the expired value at once, reloading it in the background") {
+      val (source, clock) = (new Source, new ManualClock)
+      val cache = cacheOf(source, clock)
+      cache.get
+      clock.millis = 5000
+      cache.get must be === "v1"
+      cache.get must be === "v2"
+      cache.stats must be === CacheStats(1, 1, 1, 0, 1)
+    }
+
+    it("backs off from a failing load, doubling the wait, while serving the expired value") {
+      val (source, clock) = (new Source, new ManualClock)
+      val cache = cacheOf(source, clock)
+      cache.get
+      source.failing = true
+      clock.millis = 5000
+      cache.get must be === "v1"
+      cache.get must be === "v1"
+      source.calls.get must be === 2
+
+      clock.millis = 5100
+      cache.get must be === "v1"
+      source.calls.get must be === 3
+      clock.millis = 5299
+      cache.get must be === "v1"
+      source.calls.get must be === 3
+
+      source.failing = false
+      clock.millis = 5300
+      cache.get must be === "v1"
+      cache.get must be === "v2"
+      cache.stats.failures must be === 2
+    }
+
+    it("waits for a load once the value has been expired for longer than maxStaleMillis") {
+      val (source, clock) = (new Source, new ManualClock)
+      val cache = cacheOf(source, clock, maxStaleMillis = 500)
+      cache.get
+      source.failing = true
+      clock.millis = 1499
+      cache.get must be === "v1"
+      clock.millis = 1500
+      intercept[IllegalStateException] {
+        cache.get
+      }
+      source.failing = false
+      cache.get must be === "v2"
+      cache.stats must be === CacheStats(0, 3, 0, 2, 1)
+    }
+
+    it("raises the error when there is nothing to fall back on") {
+      val source = new Source
+      source.failing = true
+      intercept[IllegalStateException] {
+        cacheOf(source, new ManualClock).get
+      }
+    }
+
+    it("drops a background load that was under way when invalidated") {
+      val (source, clock) = (new Source, new ManualClock)
+      val cache = cacheOf(source, clock)
+      cache.get
+      source.during = { () => cache.invalidate() }
+      clock.millis = 900
+      cache.get must be === "v1"
+      source.during = { () => }
+      cache.get must be === "v3"
+      cache.stats.refreshes must be === 0
+    }
+
+    it("drops a background load that was under way when preloaded") {
+      val (source, clock) = (new Source, new ManualClock)
+      val cache = cacheOf(source, clock)
+      cache.get
+      source.during = { () =>
+        source.during = { () => }
+        cache.preload()
+      }
+      clock.millis = 900
+      cache.get must be === "v1"
+      cache.get must be === "v2"
+      cache.stats.refreshes must be === 1
+    }
+
+    it("needs no load on first use after preload") {
+      val cache = cacheOf(new Source, new ManualClock)
+      cache.preload()
+      cache.get must be === "v1"
+      cache.stats.misses must be === 0
+    }
+  }
+}
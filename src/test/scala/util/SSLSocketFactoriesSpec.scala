@@ -0,0 +1,25 @@
+package net.bhardy.braintree.scala.util
+
+import net.bhardy.braintree.scala.Environment
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.matchers.MustMatchers
+
+@RunWith(classOf[JUnitRunner])
+class SSLSocketFactoriesSpec extends FunSpec with MustMatchers {
+
+  describe("forCertificates") {
+    it("builds one factory per certificate list and reuses it") {
+      val first = SSLSocketFactories.forCertificates(Environment.SANDBOX.certificateFilenames)
+      val second = SSLSocketFactories.forCertificates(Environment.SANDBOX.certificateFilenames)
+      first must be theSameInstanceAs (second)
+    }
+
+    it("keeps separate factories for separate environments") {
+      val sandbox = SSLSocketFactories.forCertificates(Environment.SANDBOX.certificateFilenames)
+      val production = SSLSocketFactories.forCertificates(Environment.PRODUCTION.certificateFilenames)
+      sandbox must not be theSameInstanceAs (production)
+    }
+  }
+}
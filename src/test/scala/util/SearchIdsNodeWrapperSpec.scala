@@ -0,0 +1,72 @@
+package net.bhardy.braintree.scala.util
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.{Pager, ResourceCollection}
+import net.bhardy.braintree.scala.search.CustomerSearchRequest
+import java.io.ByteArrayInputStream
+import scala.collection.JavaConversions._
+
+@RunWith(classOf[JUnitRunner])
+class SearchIdsNodeWrapperSpec extends FunSpec with MustMatchers {
+
+  def parse(xml: String) = SearchIdsNodeWrapper.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")))
+
+  val results = <search-results>
+    <page-size>50</page-size>
+    <ids type="array">
+      <item>a1</item> <item>b2</item>
+      <item>{"caf\u00e9"}</item>
+    </ids>
+  </search-results>
+
+  describe("parse") {
+    it("packs the ids as they are read") {
+      val node = parse(results.toString)
+      node.isInstanceOf[SearchIdsNodeWrapper] must be === true
+      SearchIdsNodeWrapper.ids(node).toList must be === List("a1", "b2", "caf\u00e9")
+      node.findInteger("page-size") must be === 50
+    }
+
+    it("answers lookups of the ids like the tree") {
+      val node = parse(results.toString)
+      val tree = SimpleNodeWrapper.parse(results.toString)
+      node.findAllStrings("ids/*") must be === tree.findAllStrings("ids/*")
+      node.findAllStrings("ids/item") must be === tree.findAllStrings("ids/item")
+      node.findFirst("ids/item").findString(".") must be === "a1"
+      node.getElementName must be === "search-results"
+      node.getFormParameters must be === tree.getFormParameters
+    }
+
+    it("finds no ids in an empty result") {
+      val node = parse(<search-results><page-size>50</page-size><ids type="array"/></search-results>.toString)
+      SearchIdsNodeWrapper.ids(node).isEmpty must be === true
+      new ResourceCollection[String](new Pager[String] { def getPage(ids: List[String]) = ids }, node).toList must be === Nil
+    }
+
+    it("parses other responses into a tree") {
+      val error = <api-error-response><message>bad</message></api-error-response>
+      val node = parse(error.toString)
+      node must be (SimpleNodeWrapper.parse(error.toString))
+      node.isSuccess must be === false
+    }
+  }
+
+  describe("Http") {
+    it("streams the ids of advanced_search_ids whatever its node factory") {
+      val transport = new InMemoryTransport
+      transport.resource("/customers", "customer").put("c1", <customer><id>c1</id></customer>)
+      val response = new Http(transport, LazyNodeWrapperFactory).post("/customers/advanced_search_ids", new CustomerSearchRequest)
+      response.isInstanceOf[SearchIdsNodeWrapper] must be === true
+      SearchIdsNodeWrapper.ids(response).toList must be === List("c1")
+    }
+  }
+
+  describe("ids") {
+    it("reads the ids of a tree too") {
+      SearchIdsNodeWrapper.ids(SimpleNodeWrapper.parse(results.toString)).toList must be === List("a1", "b2", "caf\u00e9")
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package net.bhardy.braintree.scala.util
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.testhelpers.FileHelper.withTempDirectory
+import java.io.{File, RandomAccessFile}
+
+@RunWith(classOf[JUnitRunner])
+class SegmentStoreSpec extends FunSpec with MustMatchers {
+
+  def segmentFiles(directory: File) = directory.listFiles.filter { _.getName.endsWith(".segment") }.sortBy { _.getName }
+
+  def text(bytes: Option[Array[Byte]]) = bytes.map { new String(_, "UTF-8") }
+
+  describe("get") {
+    it("returns the latest value put, and nothing once removed") {
+      withTempDirectory("segments") { directory =>
+        val store = new SegmentStore(directory)
+        store.put("a", "one".getBytes("UTF-8"))
+        store.put("a", "two".getBytes("UTF-8"))
+        text(store.get("a")) must be === Some("two")
+        store.remove("a")
+        store.get("a") must be === None
+        store.close()
+      }
+    }
+
+    it("reads values back from mapped segments once they are sealed") {
+      withTempDirectory("segments") { directory =>
+        val store = new SegmentStore(directory, segmentBytes = 64)
+        for (i <- 1 to 20) store.put("k" + i, ("value " + i).getBytes("UTF-8"))
+        store.segmentCount must be > 1
+        (1 to 20).map { i => text(store.get("k" + i)) } must be === (1 to 20).map { i => Some("value " + i) }
+        store.close()
+      }
+    }
+  }
+
+  describe("reopening") {
+    it("finds what was put and removed before closing") {
+      withTempDirectory("segments") { directory =>
+        val store = new SegmentStore(directory, segmentBytes = 64)
+        for (i <- 1 to 10) store.put("k" + i, ("value " + i).getBytes("UTF-8"))
+        store.remove("k3")
+        store.close()
+
+        val reopened = new SegmentStore(directory, segmentBytes = 64)
+        reopened.size must be === 9
+        text(reopened.get("k7")) must be === Some("value 7")
+        reopened.get("k3") must be === None
+        reopened.close()
+      }
+    }
+
+    it("drops a record torn at the end of the last segment") {
+      withTempDirectory("segments") { directory =>
+        val store = new SegmentStore(directory)
+        store.put("whole", "kept".getBytes("UTF-8"))
+        store.put("torn", "half written".getBytes("UTF-8"))
+        store.close()
+        val file = new RandomAccessFile(segmentFiles(directory).last, "rw")
+        file.setLength(file.length - 5)
+        file.close()
+
+        val reopened = new SegmentStore(directory)
+        text(reopened.get("whole")) must be === Some("kept")
+        reopened.get("torn") must be === None
+        reopened.put("after", "appended".getBytes("UTF-8"))
+        reopened.close()
+        val again = new SegmentStore(directory)
+        text(again.get("after")) must be === Some("appended")
+        again.close()
+      }
+    }
+
+    it("is refused while another store has the directory open") {
+      withTempDirectory("segments") { directory =>
+        val store = new SegmentStore(directory)
+        store.put("k", "v".getBytes("UTF-8"))
+        val thrown = intercept[IllegalStateException] {
+          new SegmentStore(directory)
+        }
+        thrown.getMessage must include ("in use")
+        text(store.get("k")) must be === Some("v")
+        store.close()
+
+        val reopened = new SegmentStore(directory)
+        text(reopened.get("k")) must be === Some("v")
+        reopened.close()
+      }
+    }
+  }
+
+  describe("compact") {
+    it("reclaims overwritten records, keeping the latest values across a reopen") {
+      withTempDirectory("segments") { directory =>
+        val store = new SegmentStore(directory, segmentBytes = 256)
+        for (round <- 1 to 10; i <- 1 to 5) store.put("k" + i, ("round " + round).getBytes("UTF-8"))
+        store.remove("k5")
+        val before = store.bytes
+        store.compact()
+        store.bytes must be < before
+        segmentFiles(directory).length must be === store.segmentCount
+        store.close()
+
+        val reopened = new SegmentStore(directory, segmentBytes = 256)
+        (1 to 5).map { i => text(reopened.get("k" + i)) } must be ===
+          List(Some("round 10"), Some("round 10"), Some("round 10"), Some("round 10"), None)
+        reopened.close()
+      }
+    }
+  }
+}
@@ -3,6 +3,7 @@ package net.bhardy.braintree.scala.util
 import scala.math.BigDecimal
 import java.util.Calendar
 import java.util.TimeZone
+import java.io.ByteArrayInputStream
 import org.scalatest.junit.JUnitRunner
 import org.junit.runner.RunWith
 import org.scalatest.matchers.MustMatchers
@@ -127,6 +128,19 @@ class SimpleNodeWrapperSpec extends FunSpec with MustMatchers {
         ))
       ))
     }
+
+    it("parses straight from a stream") {
+      val xml = XML_HEADER + "<customer><first-name>J\u00fcrgen</first-name><last-name><![CDATA[<Smith>]]></last-name></customer>"
+      val node = SimpleNodeWrapper.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")))
+      node.findString("first-name") must be === "J\u00fcrgen"
+      node.findString("last-name") must be === "<Smith>"
+    }
+
+    it("rejects documents without a root") {
+      intercept[IllegalArgumentException] {
+        SimpleNodeWrapper.parse("")
+      }
+    }
   }
 
   describe("findString") {
@@ -296,6 +310,14 @@ class SimpleNodeWrapperSpec extends FunSpec with MustMatchers {
       val node = SimpleNodeWrapper.parse(xml.toString)
       node.findAll("foo/bar") must be('empty)
     }
+
+    it("keeps document order across interleaved names") {
+      val xml = <toplevel><a>1</a><b>2</b><a>3</a><c><a>4</a></c></toplevel>
+      val node = SimpleNodeWrapper.parse(xml.toString)
+      node.findAllStrings("a") must be === List("1", "3")
+      node.findAll("*").map { _.getElementName } must be === List("a", "b", "a", "c")
+      node.findAllStrings("./c/./a") must be === List("4")
+    }
   }
 
   describe("findFirst") {
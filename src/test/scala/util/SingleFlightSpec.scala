@@ -0,0 +1,81 @@
+package net.bhardy.braintree.scala.util
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.CustomerRequest
+import net.bhardy.braintree.scala.exceptions.NotFoundException
+import net.bhardy.braintree.scala.testhelpers.ConcurrencyHelper._
+import java.io.ByteArrayInputStream
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+import scala.concurrent.{Await, Future}
+import scala.concurrent.duration.Duration
+
+@RunWith(classOf[JUnitRunner])
+class SingleFlightSpec extends FunSpec with MustMatchers {
+
+  /**
+   * Holds every request until released, counting those that reach it.
+   */
+  private class GateTransport(status: Int = 200) extends HttpTransport {
+    val arrived = new AtomicInteger
+    val release = new CountDownLatch(1)
+
+    def execute[T](request: HttpRequest)(handleResponse: HttpResponse => T): T = {
+      arrived.incrementAndGet
+      release.await(5, TimeUnit.SECONDS)
+      val body = "<customer><id>" + request.path.split("/").last + "</id></customer>"
+      handleResponse(new HttpResponse(status, new ByteArrayInputStream(body.getBytes("UTF-8"))))
+    }
+  }
+
+  /**
+   * Makes count calls at once, releasing the transport when made, the calls seen so far, reaches count.
+   */
+  private def together[T](count: Int, transport: GateTransport, made: => Long)(call: => T): List[T] = {
+    withThreads(count) { implicit executionContext =>
+      val calls = (1 to count).toList.map { _ => Future { call } }
+      awaitCondition() { made == count }
+      transport.release.countDown()
+      Await.result(Future.sequence(calls), Duration("5 seconds"))
+    }
+  }
+
+  describe("coalesced reads") {
+    it("sends concurrent identical finds once and shares the response") {
+      val transport = new GateTransport
+      val http = new Http(transport, NodeWrapperFactory, coalesceReads = true)
+      val nodes = together(6, transport, http.coalescingStats.get.reads) { http.get("/customers/c1") }
+      transport.arrived.get must be === 1
+      nodes.map { _.findString("id") }.distinct must be === List("c1")
+      http.coalescingStats must be === Some(CoalescingStats(6, 1))
+    }
+
+    it("gives every caller the exception of a failed read") {
+      val transport = new GateTransport(404)
+      val http = new Http(transport, NodeWrapperFactory, coalesceReads = true)
+      val outcomes = together(4, transport, http.coalescingStats.get.reads) {
+        try { http.get("/customers/gone"); "found" } catch { case e: NotFoundException => "not found" }
+      }
+      outcomes must be === List.fill(4)("not found")
+      transport.arrived.get must be === 1
+    }
+
+    it("never coalesces writes") {
+      val transport = new GateTransport
+      val http = new Http(transport, NodeWrapperFactory, coalesceReads = true)
+      together(3, transport, transport.arrived.get) { http.post("/customers", new CustomerRequest().firstName("Jo")) }
+      transport.arrived.get must be === 3
+    }
+
+    it("is off by default") {
+      val transport = new GateTransport
+      val http = new Http(transport)
+      together(3, transport, transport.arrived.get) { http.get("/customers/c1") }
+      transport.arrived.get must be === 3
+      http.coalescingStats must be === None
+    }
+  }
+}
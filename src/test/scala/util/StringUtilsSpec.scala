@@ -30,6 +30,13 @@ class StringUtilsSpec extends FunSpec with MustMatchers {
     it("separates pascal cased") {
       StringUtils.underscore("FirstName") must be === "first_name"
     }
+
+    it("matches the regex based conversion") {
+      for (name <- List("aBcD", "URLPath", "billingAddress2", "x-Y_z", "J\u00dcrgenName", "", "-")) {
+        StringUtils.underscore(name) must be === name.replaceAll("([a-z])([A-Z])", "$1_$2").replaceAll("-", "_").toLowerCase
+        StringUtils.dasherize(name) must be === name.replaceAll("([a-z])([A-Z])", "$1-$2").replaceAll("_", "-").toLowerCase
+      }
+    }
   }
 
   describe("dasherize") {
@@ -0,0 +1,56 @@
+package net.bhardy.braintree.scala.util
+
+import _root_.org.junit.runner.RunWith
+import _root_.org.scalatest.FunSpec
+import _root_.org.scalatest.junit.JUnitRunner
+import _root_.org.scalatest.matchers.MustMatchers
+import net.bhardy.braintree.scala.testhelpers.CalendarHelper
+
+@RunWith(classOf[JUnitRunner])
+class ValueDecoderSpec extends FunSpec with MustMatchers {
+
+  describe("date") {
+    it("matches SimpleDateFormat") {
+      for (value <- List("2010-02-16", "2012-02-29", "2013-13-45", "2013-07-09T18:23:29Z", "0001-01-01")) {
+        ValueDecoder.date(value) must be === CalendarHelper.date(value)
+      }
+    }
+
+    it("wraps parse failures") {
+      intercept[RuntimeException] {
+        ValueDecoder.date("not a date")
+      }
+    }
+  }
+
+  describe("dateTime") {
+    it("matches SimpleDateFormat") {
+      for (value <- List("2010-02-16T16:32:07Z", "1999-12-31T23:59:59Z", "2013-07-09T24:61:61Z")) {
+        ValueDecoder.dateTime(value) must be === CalendarHelper.dateTime(value)
+      }
+    }
+
+    it("gives every calendar its own zone") {
+      val first = ValueDecoder.dateTime("2010-02-16T16:32:07Z")
+      first.getTimeZone.setRawOffset(3600000)
+      ValueDecoder.dateTime("2010-02-16T16:32:07Z").getTimeZone.getRawOffset must be === 0
+    }
+  }
+
+  describe("bigDecimal") {
+    it("matches BigDecimal(String) in value and scale") {
+      for (value <- List("100.00", "-12.5", "0", "-0.00", "1.", ".5", "123456789012345678", "1234567890123456789.01",
+        "1E+3", "+7")) {
+        val decoded = ValueDecoder.bigDecimal(value)
+        decoded must be === BigDecimal(value)
+        decoded.scale must be === BigDecimal(value).scale
+      }
+    }
+
+    it("rejects what BigDecimal rejects") {
+      intercept[NumberFormatException] {
+        ValueDecoder.bigDecimal("-")
+      }
+    }
+  }
+}
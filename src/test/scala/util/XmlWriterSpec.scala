@@ -0,0 +1,46 @@
+package net.bhardy.braintree.scala.util
+
+import java.io.ByteArrayOutputStream
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.matchers.MustMatchers
+
+@RunWith(classOf[JUnitRunner])
+class XmlWriterSpec extends FunSpec with MustMatchers {
+
+  def written(write: XmlWriter => Any): String = {
+    val out = new ByteArrayOutputStream
+    val writer = new XmlWriter(out)
+    write(writer)
+    writer.flush()
+    new String(out.toByteArray, "UTF-8")
+  }
+
+  describe("escape") {
+    it("escapes the five special characters") {
+      XmlUtil.escape("a&b<c>d'e\"f") must be === "a&amp;b&lt;c&gt;d&apos;e&quot;f"
+    }
+
+    it("returns plain text as is") {
+      val plain = "nothing to see"
+      XmlUtil.escape(plain) must be theSameInstanceAs (plain)
+    }
+  }
+
+  describe("XmlWriter") {
+    it("writes elements with escaped text as UTF-8") {
+      written { _.start("customer").element("first-name", "J\u00fcrgen & co").end("customer") } must be ===
+        "<customer><first-name>J\u00fcrgen &amp; co</first-name></customer>"
+    }
+
+    it("writes type attributes") {
+      written { _.start("ids", Some("array")).element("item", "1").end("ids") } must be ===
+        "<ids type=\"array\"><item>1</item></ids>"
+    }
+
+    it("writes existing elements") {
+      written { _.write(<search><id><is>a&lt;b</is></id></search>) } must be === "<search><id><is>a&lt;b</is></id></search>"
+    }
+  }
+}